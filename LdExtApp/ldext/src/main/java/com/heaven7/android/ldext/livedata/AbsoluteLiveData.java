@@ -18,24 +18,58 @@ package com.heaven7.android.ldext.livedata;
 
 import androidx.annotation.MainThread;
 import androidx.annotation.Nullable;
+import androidx.arch.core.executor.ArchTaskExecutor;
+import androidx.lifecycle.Lifecycle;
 import androidx.lifecycle.LifecycleOwner;
 import androidx.lifecycle.MutableLiveData;
 import androidx.lifecycle.Observer;
 
+import java.util.HashMap;
+import java.util.Map;
 import java.util.Objects;
-import java.util.concurrent.atomic.AtomicBoolean;
+import java.util.concurrent.atomic.AtomicReference;
 
+/**
+ * the live data which track the delivery per observer. every value has a version, and every observer
+ * remember the last version it consumed. so each observer consume each value exactly once.
+ * <ul>
+ *     <li>sticky: the new observer receive the last value (see {@linkplain #reset()}) immediately, and then only new values.
+ *     <li>single (see {@linkplain SingleLiveEvent}): the new observer only receive the value which is not delivered to anyone.
+ *     <li>otherwise: the same as the {@linkplain MutableLiveData}.
+ * </ul>
+ * the versions are only accessed on main thread.
+ * <p>the post is lock-free: the value is swapped into an atomic slot, and only the first post after a dispatch
+ * schedule the drain. the posts before the drain are conflated.</p>
+ * @param <T> the value type
+ */
 public class AbsoluteLiveData<T> extends MutableLiveData<T> {
 
     private static final Object UNSET = new Object();
-    private final AtomicBoolean mPending = new AtomicBoolean(false);
+    private static final int START_VERSION = -1;
     private final boolean mSticky;
-    private Object mValue = UNSET;
+    /** the sticky value. only written on main thread. */
+    private volatile Object mValue = UNSET;
+    private MainDrainQueue mBuffer;
+    private volatile DispatchCoordinator mCoordinator;
+    /** the posted value which is not dispatched yet */
+    private final AtomicReference<Object> mPendingValue = new AtomicReference<>(UNSET);
+    private final PendingDispatcher mDispatcher = new PendingDispatcher();
+    /** the version of current value */
+    private int mVersion = START_VERSION;
+    /** the max version which is delivered to any observer */
+    private int mDeliveredVersion = START_VERSION;
+    /** the version of the constructor value. which is never delivered to the non-sticky observer. */
+    private final int mInitialVersion;
+    /** the wrappers of observers. so removeObserver(observer) can find the wrapper. only accessed on main thread. */
+    private final Map<Observer<? super T>, WrappedObserver> mWrappers = new HashMap<>();
 
     public AbsoluteLiveData(T value, boolean mSticky) {
         super(value);
         this.mValue = value;
         this.mSticky = mSticky;
+        this.mVersion = START_VERSION + 1;
+        this.mInitialVersion = mVersion;
+        this.mDeliveredVersion = mVersion;
     }
     public AbsoluteLiveData(T value) {
         this(value, false);
@@ -43,6 +77,7 @@ public class AbsoluteLiveData<T> extends MutableLiveData<T> {
 
     public AbsoluteLiveData(boolean mSticky) {
         this.mSticky = mSticky;
+        this.mInitialVersion = START_VERSION;
     }
 
     public AbsoluteLiveData() {
@@ -54,6 +89,40 @@ public class AbsoluteLiveData<T> extends MutableLiveData<T> {
         return (AbsoluteLiveData<R>) this;
     }
 
+    /**
+     * set the buffered mode. in buffered mode {@linkplain #postValue(Object)} never conflate. the values are appended to
+     * a lock-free queue, and the main thread deliver every value in order. at most max-batch-size values are delivered in
+     * one main-loop turn, the rest are delivered in the next turn. this should be called before any post.
+     * @param maxBatchSize the max count of values delivered in one turn. 0 to disable buffered mode.
+     * @return this
+     */
+    public AbsoluteLiveData<T> setBufferedMode(int maxBatchSize){
+        if(maxBatchSize <= 0){
+            mBuffer = null;
+        }else {
+            mBuffer = new MainDrainQueue(maxBatchSize) {
+                @SuppressWarnings("unchecked")
+                @Override
+                protected void onItem(Object item) {
+                    setValue((T) item);
+                }
+            };
+        }
+        return this;
+    }
+
+    /**
+     * set the dispatch coordinator. the posted values are delivered on the next frame together with the other
+     * participating live data (see {@linkplain DispatchCoordinator}). the values posted in one frame are conflated.
+     * the buffered mode (see {@linkplain #setBufferedMode(int)}) take precedence over this.
+     * @param coordinator the coordinator. often {@linkplain DispatchCoordinator#getDefault()}. null to disable.
+     * @return this
+     */
+    public AbsoluteLiveData<T> setDispatchCoordinator(DispatchCoordinator coordinator){
+        this.mCoordinator = coordinator;
+        return this;
+    }
+
     public AbsoluteLiveData<T> reset(){
         if(mValue != UNSET){
             mValue = UNSET;
@@ -64,15 +133,34 @@ public class AbsoluteLiveData<T> extends MutableLiveData<T> {
     @MainThread
     @Override
     public void observe(LifecycleOwner owner, final Observer<? super T> observer) {
-       // removeObservers(owner);
-        if(mSticky && mValue != UNSET){
-            observer.onChanged((T)mValue);
-            setDispatchEnabled(false);
-           // mPending.set(false);
+        //ignored by the super. don't keep the wrapper.
+        if(owner.getLifecycle().getCurrentState() == Lifecycle.State.DESTROYED){
+            return;
         }
-        WrappedObserver wrappedObserver = new WrappedObserver(observer);
         // Observe the internal MutableLiveData
-        super.observe(owner, wrappedObserver);
+        super.observe(owner, wrap(observer));
+    }
+
+    @MainThread
+    @Override
+    public void observeForever(Observer<? super T> observer) {
+        super.observeForever(wrap(observer));
+    }
+
+    @MainThread
+    @Override
+    public void removeObserver(Observer<? super T> observer) {
+        //called with the wrapper by the lifecycle and removeObservers(owner).
+        if(observer instanceof AbsoluteLiveData.WrappedObserver){
+            Observer<? super T> base = ((WrappedObserver) observer).base;
+            if(mWrappers.get(base) == observer){
+                mWrappers.remove(base);
+            }
+            super.removeObserver(observer);
+        }else {
+            WrappedObserver wrapped = mWrappers.remove(observer);
+            super.removeObserver(wrapped != null ? wrapped : observer);
+        }
     }
 
     @MainThread
@@ -81,50 +169,96 @@ public class AbsoluteLiveData<T> extends MutableLiveData<T> {
         if(mSticky){
             mValue = t;
         }
-        mPending.set(true);
+        mVersion ++;
         super.setValue(t);
     }
 
     @Override
     public void postValue(T value) {
-        if(mSticky){
-            mValue = value;
+        MainDrainQueue buffer = mBuffer;
+        if(buffer != null){
+            buffer.offer(value);
+            return;
+        }
+        //schedule once until dispatched. the sticky value is set on dispatch.
+        if(mPendingValue.getAndSet(value) == UNSET){
+            DispatchCoordinator coordinator = mCoordinator;
+            if(coordinator != null){
+                coordinator.enqueue(mDispatcher);
+            }else {
+                ArchTaskExecutor.getInstance().postToMainThread(mDispatcher);
+            }
         }
-        mPending.set(true);
-        super.postValue(value);
     }
 
-    protected void setDispatchEnabled(boolean enable){
-        mPending.set(enable);
-    }
-    protected boolean shouldDispatchValue(){
-        return mPending.get();
-    }
     protected boolean isSingle(){
         return false;
     }
+    boolean isSticky(){
+        return mSticky;
+    }
+
+    //the sticky value is delivered directly. and then only the new values. the non-sticky observer starts after
+    //the constructor value.
+    @SuppressWarnings("unchecked")
+    private WrappedObserver wrap(Observer<? super T> observer){
+        //already observed. let the super decide.
+        WrappedObserver wrappedObserver = mWrappers.get(observer);
+        if(wrappedObserver != null){
+            return wrappedObserver;
+        }
+        wrappedObserver = new WrappedObserver(observer);
+        mWrappers.put(observer, wrappedObserver);
+        if(mSticky){
+            final Object value = mValue;
+            if(value != UNSET){
+                mDeliveredVersion = mVersion;
+                observer.onChanged((T) value);
+            }
+            wrappedObserver.lastVersion = mVersion;
+        }else if(isSingle()){
+            wrappedObserver.lastVersion = mDeliveredVersion;
+        }else {
+            //the value which is set later is delivered as the MutableLiveData.
+            wrappedObserver.lastVersion = mInitialVersion;
+        }
+        return wrappedObserver;
+    }
+
+    private class PendingDispatcher implements DispatchCoordinator.Participant, Runnable{
+        @SuppressWarnings("unchecked")
+        @Override
+        public void dispatchPending() {
+            Object value = mPendingValue.getAndSet(UNSET);
+            if(value != UNSET){
+                setValue((T) value);
+            }
+        }
+        @Override
+        public void run() {
+            dispatchPending();
+        }
+    }
 
     private class WrappedObserver implements Observer<T>{
 
         private final Observer<? super T> base;
+        /** the version which is consumed by this observer */
+        int lastVersion = START_VERSION;
 
         public WrappedObserver(Observer<? super T> base) {
             this.base = base;
         }
         @Override
         public void onChanged(T t) {
-            if(shouldDispatchValue()){
-                //single means only re-set value will deliver
-                if(isSingle()){
-                    setDispatchEnabled(false);
-                }
-                base.onChanged(t);
-            }else {
-                //non-single. means recovery
-                if(!isSingle()){
-                    setDispatchEnabled(true);
-                }
+            if(lastVersion >= mVersion){
+                return;
+            }
+            lastVersion = mVersion;
+            if(mDeliveredVersion < mVersion){
+                mDeliveredVersion = mVersion;
             }
+            base.onChanged(t);
         }
         @Override
         public boolean equals(Object o) {
@@ -0,0 +1,52 @@
+package com.heaven7.android.ldext.livedata;
+
+import java.util.ArrayList;
+import java.util.List;
+
+/**
+ * the live data which collect the items of high-frequency producers (e.g. download progress, socket messages),
+ * and deliver them in batch. the items which are added in one main-loop turn are delivered as one list, in order.
+ * no item is lost.
+ * @param <T> the item type
+ * @author heaven7
+ */
+public class BatchLiveData<T> extends AbsoluteLiveData<List<T>> {
+
+    private final MainDrainQueue mQueue;
+
+    /**
+     * create batch live data
+     * @param maxBatchSize the max size of one batch. the rest items are delivered in the next batch.
+     * @param mSticky true if the last batch is delivered to the new observer
+     */
+    public BatchLiveData(int maxBatchSize, boolean mSticky) {
+        super(mSticky);
+        this.mQueue = new MainDrainQueue(maxBatchSize) {
+            private List<T> mBatch = new ArrayList<>();
+
+            @SuppressWarnings("unchecked")
+            @Override
+            protected void onItem(Object item) {
+                mBatch.add((T) item);
+            }
+            @Override
+            protected void onBatchEnd(int count) {
+                //the delivered list is owned by observers.
+                List<T> batch = mBatch;
+                mBatch = new ArrayList<>();
+                setValue(batch);
+            }
+        };
+    }
+    public BatchLiveData(int maxBatchSize) {
+        this(maxBatchSize, false);
+    }
+
+    /**
+     * add the item. this can be called on any thread.
+     * @param item the item
+     */
+    public void add(T item){
+        mQueue.offer(item);
+    }
+}
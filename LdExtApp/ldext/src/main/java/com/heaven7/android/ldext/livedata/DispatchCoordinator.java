@@ -0,0 +1,190 @@
+package com.heaven7.android.ldext.livedata;
+
+import android.os.Handler;
+import android.os.Looper;
+import android.os.SystemClock;
+import android.view.Choreographer;
+
+import java.util.concurrent.ConcurrentLinkedQueue;
+import java.util.concurrent.TimeUnit;
+import java.util.concurrent.atomic.AtomicBoolean;
+
+/**
+ * the dispatch coordinator which collect the pending values of the participating live data during a frame,
+ * and deliver them all in one pass on the next frame tick. so the updates of many live data cause one layout pass.
+ * the pass has a time budget, the rest values are delivered in the next frame.
+ * <p>the frame source and time source are pluggable (see {@linkplain FrameScheduler} and {@linkplain Ticker}).</p>
+ * @see AbsoluteLiveData#setDispatchCoordinator(DispatchCoordinator)
+ * @author heaven7
+ */
+public final class DispatchCoordinator {
+
+    private static final long DEFAULT_BUDGET = TimeUnit.MILLISECONDS.toNanos(4);
+    private static volatile DispatchCoordinator sDefault;
+
+    private final ConcurrentLinkedQueue<Participant> mQueue = new ConcurrentLinkedQueue<>();
+    private final AtomicBoolean mFrameScheduled = new AtomicBoolean(false);
+    private final FrameScheduler mScheduler;
+    private final Ticker mTicker;
+    private final long mBudget;
+
+    private final Runnable mFrameTask = new Runnable() {
+        @Override
+        public void run() {
+            doFrame();
+        }
+    };
+
+    /**
+     * create dispatch coordinator
+     * @param scheduler the frame scheduler
+     * @param ticker the time source
+     * @param budget the time budget of one frame in nanos
+     */
+    public DispatchCoordinator(FrameScheduler scheduler, Ticker ticker, long budget) {
+        this.mScheduler = scheduler;
+        this.mTicker = ticker;
+        this.mBudget = budget;
+    }
+
+    /**
+     * get the process-wide coordinator. which is aligned to the vsync of main thread, and has a 4ms budget per frame.
+     * @return the coordinator
+     */
+    public static DispatchCoordinator getDefault(){
+        if(sDefault == null){
+            synchronized (DispatchCoordinator.class){
+                if(sDefault == null){
+                    sDefault = new DispatchCoordinator(new ChoreographerFrameScheduler(), new SystemTicker(), DEFAULT_BUDGET);
+                }
+            }
+        }
+        return sDefault;
+    }
+    /**
+     * set the process-wide coordinator. this should be called before any use.
+     * @param coordinator the coordinator
+     */
+    public static void setDefault(DispatchCoordinator coordinator){
+        sDefault = coordinator;
+    }
+
+    /**
+     * enqueue the participant which has pending value. this can be called on any thread.
+     * the participant should be enqueued once until it is dispatched.
+     * @param participant the participant
+     */
+    public void enqueue(Participant participant){
+        mQueue.offer(participant);
+        requestFrame();
+    }
+
+    private void requestFrame(){
+        if(mFrameScheduled.compareAndSet(false, true)){
+            mScheduler.scheduleFrame(mFrameTask);
+        }
+    }
+    //main thread
+    private void doFrame(){
+        mFrameScheduled.set(false);
+        final long start = mTicker.nanoTime();
+        Participant p;
+        while ((p = mQueue.poll()) != null){
+            p.dispatchPending();
+            if(mTicker.nanoTime() - start >= mBudget){
+                break;
+            }
+        }
+        if(!mQueue.isEmpty()){
+            requestFrame();
+        }
+    }
+
+    /**
+     * the participant of coordinator. which often is the live data.
+     */
+    public interface Participant{
+        /**
+         * dispatch the pending value. called on main thread.
+         */
+        void dispatchPending();
+    }
+
+    /**
+     * the frame scheduler
+     */
+    public interface FrameScheduler{
+        /**
+         * schedule the frame task to run on main thread at the next frame. this can be called on any thread.
+         * @param frame the frame task
+         */
+        void scheduleFrame(Runnable frame);
+    }
+
+    /**
+     * the time source
+     */
+    public interface Ticker{
+        long nanoTime();
+    }
+
+    /**
+     * the ticker of {@linkplain SystemClock#elapsedRealtimeNanos()}
+     */
+    public static final class SystemTicker implements Ticker{
+        @Override
+        public long nanoTime() {
+            return SystemClock.elapsedRealtimeNanos();
+        }
+    }
+
+    /**
+     * the frame scheduler which is aligned to the vsync by {@linkplain Choreographer}.
+     */
+    public static final class ChoreographerFrameScheduler implements FrameScheduler, Choreographer.FrameCallback, Runnable{
+        private final Handler mHandler = new Handler(Looper.getMainLooper());
+        private volatile Runnable mFrame;
+
+        @Override
+        public void scheduleFrame(Runnable frame) {
+            mFrame = frame;
+            //the choreographer is per looper.
+            if(Looper.myLooper() == Looper.getMainLooper()){
+                run();
+            }else {
+                mHandler.post(this);
+            }
+        }
+        @Override
+        public void run() {
+            Choreographer.getInstance().postFrameCallback(this);
+        }
+        @Override
+        public void doFrame(long frameTimeNanos) {
+            mFrame.run();
+        }
+    }
+
+    /**
+     * the frame scheduler which run the frame on the looper with the fixed interval. which is useful for the looper
+     * which has no vsync, and for test.
+     */
+    public static final class HandlerFrameScheduler implements FrameScheduler{
+        private final Handler mHandler;
+        private final long mInterval;
+
+        /**
+         * create the frame scheduler
+         * @param looper the looper
+         * @param interval the frame interval in mills
+         */
+        public HandlerFrameScheduler(Looper looper, long interval) {
+            this.mHandler = new Handler(looper);
+            this.mInterval = interval;
+        }
+        @Override
+        public void scheduleFrame(Runnable frame) {
+            mHandler.postDelayed(frame, mInterval);
+        }
+    }
+}
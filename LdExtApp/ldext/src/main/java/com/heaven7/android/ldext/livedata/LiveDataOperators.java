@@ -0,0 +1,264 @@
+package com.heaven7.android.ldext.livedata;
+
+import androidx.lifecycle.LiveData;
+
+import java.util.Comparator;
+
+/**
+ * the rate-limit operators of live data. every operator return a new lifecycle-aware live data which observe
+ * the upstream only when it is active. the output mirror the sticky and single semantics of upstream
+ * (see {@linkplain AbsoluteLiveData}). every operator instance has a single reusable timer, there is no message per value.
+ * the timer runs on the main looper.
+ * <p>the operators should be created and observed on main thread.</p>
+ * @author heaven7
+ */
+public final class LiveDataOperators {
+
+    private LiveDataOperators(){}
+
+    /**
+     * emit the latest value only after the upstream is quiet for the window.
+     * @param upstream the upstream
+     * @param window the window in mills
+     * @param <T> the value type
+     * @return the live data
+     */
+    public static <T> AbsoluteLiveData<T> debounce(LiveData<T> upstream, long window){
+        return debounce(upstream, window, OperatorLiveData.mainTimerSource());
+    }
+    static <T> AbsoluteLiveData<T> debounce(LiveData<T> upstream, long window, OperatorLiveData.TimerSource source){
+        return new Debounce<>(upstream, window, source);
+    }
+
+    /**
+     * emit the first value, then ignore the values in the window.
+     * @param upstream the upstream
+     * @param window the window in mills
+     * @param <T> the value type
+     * @return the live data
+     */
+    public static <T> AbsoluteLiveData<T> throttleFirst(LiveData<T> upstream, long window){
+        return throttleFirst(upstream, window, OperatorLiveData.mainTimerSource());
+    }
+    static <T> AbsoluteLiveData<T> throttleFirst(LiveData<T> upstream, long window, OperatorLiveData.TimerSource source){
+        return new ThrottleFirst<>(upstream, window, source);
+    }
+
+    /**
+     * emit the first value, then emit the latest value at the end of every window.
+     * @param upstream the upstream
+     * @param window the window in mills
+     * @param <T> the value type
+     * @return the live data
+     */
+    public static <T> AbsoluteLiveData<T> throttleLatest(LiveData<T> upstream, long window){
+        return throttleLatest(upstream, window, OperatorLiveData.mainTimerSource());
+    }
+    static <T> AbsoluteLiveData<T> throttleLatest(LiveData<T> upstream, long window, OperatorLiveData.TimerSource source){
+        return new ThrottleLatest<>(upstream, window, source);
+    }
+
+    /**
+     * emit the latest value in every period. the period which has no new value emit nothing.
+     * @param upstream the upstream
+     * @param period the period in mills
+     * @param <T> the value type
+     * @return the live data
+     */
+    public static <T> AbsoluteLiveData<T> sample(LiveData<T> upstream, long period){
+        return sample(upstream, period, OperatorLiveData.mainTimerSource());
+    }
+    static <T> AbsoluteLiveData<T> sample(LiveData<T> upstream, long period, OperatorLiveData.TimerSource source){
+        return new Sample<>(upstream, period, source);
+    }
+
+    /**
+     * emit the value only if it is different from the last emitted value.
+     * @param upstream the upstream
+     * @param comparator the comparator. 0 means the same. null means use {@linkplain Object#equals(Object)}.
+     *                   it is only called with non-null values, the first value is always emitted.
+     * @param <T> the value type
+     * @return the live data
+     */
+    public static <T> AbsoluteLiveData<T> distinctUntilChanged(LiveData<T> upstream, Comparator<? super T> comparator){
+        return new Distinct<>(upstream, comparator);
+    }
+    public static <T> AbsoluteLiveData<T> distinctUntilChanged(LiveData<T> upstream){
+        return distinctUntilChanged(upstream, null);
+    }
+
+    private static class Debounce<T> extends OperatorLiveData<T>{
+        private final long mWindow;
+        private long mLastTime;
+        private boolean mHasPending;
+        private T mPending;
+
+        Debounce(LiveData<T> upstream, long window, TimerSource source) {
+            super(upstream, source);
+            this.mWindow = window;
+        }
+        @Override
+        protected void onUpstream(T t) {
+            mPending = t;
+            mHasPending = true;
+            mLastTime = now();
+            scheduleTimer(mWindow);
+        }
+        @Override
+        protected void onTimer() {
+            if(!mHasPending){
+                return;
+            }
+            //the timer is not re-posted for every value. wait the rest of window.
+            long elapsed = now() - mLastTime;
+            if(elapsed < mWindow){
+                scheduleTimer(mWindow - elapsed);
+                return;
+            }
+            T t = mPending;
+            mPending = null;
+            mHasPending = false;
+            setValue(t);
+        }
+        @Override
+        protected void onResume() {
+            if(mHasPending){
+                scheduleTimer(mWindow - (now() - mLastTime));
+            }
+        }
+    }
+
+    private static class ThrottleFirst<T> extends OperatorLiveData<T>{
+        private final long mWindow;
+        private long mLastEmit;
+        private boolean mEmitted;
+
+        ThrottleFirst(LiveData<T> upstream, long window, TimerSource source) {
+            super(upstream, source);
+            this.mWindow = window;
+        }
+        @Override
+        protected void onUpstream(T t) {
+            long now = now();
+            if(!mEmitted || now - mLastEmit >= mWindow){
+                mEmitted = true;
+                mLastEmit = now;
+                setValue(t);
+            }
+        }
+    }
+
+    private static class ThrottleLatest<T> extends OperatorLiveData<T>{
+        private final long mWindow;
+        private long mLastEmit;
+        private boolean mEmitted;
+        private boolean mHasPending;
+        private T mPending;
+
+        ThrottleLatest(LiveData<T> upstream, long window, TimerSource source) {
+            super(upstream, source);
+            this.mWindow = window;
+        }
+        @Override
+        protected void onUpstream(T t) {
+            long now = now();
+            if(!mEmitted || now - mLastEmit >= mWindow){
+                emit(t, now);
+            }else {
+                mPending = t;
+                mHasPending = true;
+                scheduleTimer(mWindow - (now - mLastEmit));
+            }
+        }
+        @Override
+        protected void onTimer() {
+            if(!mHasPending){
+                return;
+            }
+            long now = now();
+            long elapsed = now - mLastEmit;
+            if(elapsed < mWindow){
+                scheduleTimer(mWindow - elapsed);
+                return;
+            }
+            T t = mPending;
+            mPending = null;
+            mHasPending = false;
+            emit(t, now);
+        }
+        @Override
+        protected void onResume() {
+            if(mHasPending){
+                scheduleTimer(mWindow - (now() - mLastEmit));
+            }
+        }
+        private void emit(T t, long now){
+            mEmitted = true;
+            mLastEmit = now;
+            setValue(t);
+        }
+    }
+
+    private static class Sample<T> extends OperatorLiveData<T>{
+        private final long mPeriod;
+        private boolean mHasPending;
+        private T mPending;
+
+        Sample(LiveData<T> upstream, long period, TimerSource source) {
+            super(upstream, source);
+            this.mPeriod = period;
+        }
+        @Override
+        protected void onUpstream(T t) {
+            mPending = t;
+            mHasPending = true;
+            scheduleTimer(mPeriod);
+        }
+        @Override
+        protected void onTimer() {
+            if(mHasPending){
+                T t = mPending;
+                mPending = null;
+                mHasPending = false;
+                setValue(t);
+            }
+        }
+        @Override
+        protected void onResume() {
+            if(mHasPending){
+                scheduleTimer(mPeriod);
+            }
+        }
+    }
+
+    private static class Distinct<T> extends OperatorLiveData<T>{
+        private final Comparator<? super T> mComparator;
+        private boolean mEmitted;
+        private T mLast;
+
+        Distinct(LiveData<T> upstream, Comparator<? super T> comparator) {
+            //no timer.
+            super(upstream, null);
+            this.mComparator = comparator;
+        }
+        @Override
+        protected void onUpstream(T t) {
+            if(mEmitted && isSame(mLast, t)){
+                return;
+            }
+            mEmitted = true;
+            mLast = t;
+            setValue(t);
+        }
+        private boolean isSame(T old, T now){
+            //the comparator never see null.
+            if(old == null || now == null){
+                return old == now;
+            }
+            if(mComparator != null){
+                return mComparator.compare(old, now) == 0;
+            }
+            return old.equals(now);
+        }
+    }
+}
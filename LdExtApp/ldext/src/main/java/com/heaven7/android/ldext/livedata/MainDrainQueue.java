@@ -0,0 +1,66 @@
+package com.heaven7.android.ldext.livedata;
+
+import androidx.arch.core.executor.ArchTaskExecutor;
+
+import java.util.concurrent.ConcurrentLinkedQueue;
+import java.util.concurrent.atomic.AtomicBoolean;
+
+/**
+ * the lock-free queue which is offered by any thread and drained on the main thread.
+ * at most max-batch-size items are drained in one main-loop turn, the rest are drained in the next turn.
+ * @author heaven7
+ */
+abstract class MainDrainQueue implements Runnable {
+
+    private static final Object NULL = new Object();
+
+    private final ConcurrentLinkedQueue<Object> mQueue = new ConcurrentLinkedQueue<>();
+    private final AtomicBoolean mScheduled = new AtomicBoolean(false);
+    private final int mMaxBatchSize;
+
+    MainDrainQueue(int maxBatchSize) {
+        if(maxBatchSize <= 0){
+            throw new IllegalArgumentException("maxBatchSize must > 0");
+        }
+        this.mMaxBatchSize = maxBatchSize;
+    }
+
+    public void offer(Object item){
+        mQueue.offer(item == null ? NULL : item);
+        if(mScheduled.compareAndSet(false, true)){
+            ArchTaskExecutor.getInstance().postToMainThread(this);
+        }
+    }
+
+    @Override
+    public void run() {
+        int count = 0;
+        Object item;
+        while (count < mMaxBatchSize && (item = mQueue.poll()) != null){
+            onItem(item == NULL ? null : item);
+            count ++;
+        }
+        if(count > 0){
+            onBatchEnd(count);
+        }
+        mScheduled.set(false);
+        //the rest or the item which is offered during drain.
+        if(!mQueue.isEmpty() && mScheduled.compareAndSet(false, true)){
+            ArchTaskExecutor.getInstance().postToMainThread(this);
+        }
+    }
+
+    /**
+     * called on main thread for every item, in order.
+     * @param item the item
+     */
+    protected abstract void onItem(Object item);
+
+    /**
+     * called on main thread after the items of one batch are drained.
+     * @param count the count of items
+     */
+    protected void onBatchEnd(int count){
+
+    }
+}
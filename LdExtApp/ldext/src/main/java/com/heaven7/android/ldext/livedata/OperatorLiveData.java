@@ -0,0 +1,161 @@
+package com.heaven7.android.ldext.livedata;
+
+import android.os.Handler;
+import android.os.Looper;
+import android.os.SystemClock;
+
+import androidx.lifecycle.LiveData;
+import androidx.lifecycle.Observer;
+
+/**
+ * the base of operators (see {@linkplain LiveDataOperators}). which observe the upstream only when active,
+ * and mirror the sticky and single semantics of upstream. every operator instance has a single reusable timer,
+ * which is posted to the timer source given by the factory.
+ * <p>all methods are called on main thread.</p>
+ * @param <T> the value type
+ * @author heaven7
+ */
+abstract class OperatorLiveData<T> extends AbsoluteLiveData<T> {
+
+    private final LiveData<T> mUpstream;
+    private final boolean mSingle;
+    private final TimerSource mTimerSource;
+    private boolean mTimerScheduled;
+    private boolean mReattached;
+    private boolean mHasInput;
+    private T mLastInput;
+
+    private final Observer<T> mObserver = new Observer<T>() {
+        @Override
+        public void onChanged(T t) {
+            //the plain live data replay the current value when re-attached.
+            if(mReattached){
+                mReattached = false;
+                if(mHasInput && t == mLastInput){
+                    return;
+                }
+            }
+            mHasInput = true;
+            mLastInput = t;
+            onUpstream(t);
+        }
+    };
+    private final Runnable mTimer = new Runnable() {
+        @Override
+        public void run() {
+            mTimerScheduled = false;
+            onTimer();
+        }
+    };
+
+    /**
+     * create the operator
+     * @param upstream the upstream
+     * @param timerSource the source of time and timer. null if the operator never use the timer.
+     */
+    OperatorLiveData(LiveData<T> upstream, TimerSource timerSource) {
+        super(upstream instanceof AbsoluteLiveData && ((AbsoluteLiveData<T>) upstream).isSticky());
+        this.mUpstream = upstream;
+        this.mSingle = upstream instanceof AbsoluteLiveData && ((AbsoluteLiveData<T>) upstream).isSingle();
+        this.mTimerSource = timerSource;
+    }
+
+    @Override
+    protected boolean isSingle() {
+        return mSingle;
+    }
+
+    @Override
+    protected void onActive() {
+        super.onActive();
+        mReattached = mHasInput;
+        mUpstream.observeForever(mObserver);
+        onResume();
+    }
+
+    @Override
+    protected void onInactive() {
+        super.onInactive();
+        mUpstream.removeObserver(mObserver);
+        cancelTimer();
+    }
+
+    /**
+     * schedule the timer. if the timer is already scheduled, this does nothing.
+     * @param delay the delay in mills
+     */
+    protected void scheduleTimer(long delay){
+        if(!mTimerScheduled){
+            mTimerScheduled = true;
+            mTimerSource.postDelayed(mTimer, Math.max(0, delay));
+        }
+    }
+    protected void cancelTimer(){
+        if(mTimerScheduled){
+            mTimerScheduled = false;
+            mTimerSource.remove(mTimer);
+        }
+    }
+    protected long now(){
+        return mTimerSource.now();
+    }
+
+    /**
+     * get the timer source of main looper. the handler is created on first call, so the class can be loaded without a looper.
+     * @return the timer source
+     */
+    static TimerSource mainTimerSource(){
+        return MainTimerSource.INSTANCE;
+    }
+
+    /**
+     * called when the upstream emit the value
+     * @param t the value
+     */
+    protected abstract void onUpstream(T t);
+
+    /**
+     * called when the timer fires
+     */
+    protected void onTimer(){
+
+    }
+
+    /**
+     * called when this becomes active again. the operator which has the pending value should schedule the timer.
+     */
+    protected void onResume(){
+
+    }
+
+    /**
+     * the source of time and timer. called on main thread.
+     */
+    interface TimerSource{
+        /**
+         * get the current time in mills
+         * @return the time
+         */
+        long now();
+        void postDelayed(Runnable task, long delay);
+        void remove(Runnable task);
+    }
+
+    private static class MainTimerSource implements TimerSource{
+        static final MainTimerSource INSTANCE = new MainTimerSource();
+
+        private final Handler mHandler = new Handler(Looper.getMainLooper());
+        @Override
+        public long now() {
+            return SystemClock.uptimeMillis();
+        }
+        @Override
+        public void postDelayed(Runnable task, long delay) {
+            mHandler.postDelayed(task, delay);
+        }
+        @Override
+        public void remove(Runnable task) {
+            mHandler.removeCallbacks(task);
+        }
+    }
+}
@@ -0,0 +1,151 @@
+package com.heaven7.android.ldext.livedata;
+
+import androidx.annotation.MainThread;
+import androidx.annotation.Nullable;
+import androidx.arch.core.executor.ArchTaskExecutor;
+
+/**
+ * the single live event which queue the events while there is no active observer (e.g. the activity is in background).
+ * the queued events are delivered in order when an observer becomes active. the queue is a fixed-capacity ring buffer,
+ * when it is full the {@linkplain OverflowPolicy} decide which event is dropped.
+ * <p>the post events are also put in the ring buffer, so they are never conflated within the capacity.
+ * there is no per-event allocation.</p>
+ * @param <T> the event type
+ * @author heaven7
+ */
+public class QueuedLiveEvent<T> extends SingleLiveEvent<T> {
+
+    private final Object[] mBuffer;
+    private final OverflowPolicy mPolicy;
+    private int mHead;
+    private int mSize;
+    private boolean mDrainScheduled;
+
+    private final Runnable mDrainTask = new Runnable() {
+        @Override
+        public void run() {
+            synchronized (mBuffer){
+                mDrainScheduled = false;
+            }
+            drain();
+        }
+    };
+
+    /**
+     * the policy when the queue is full
+     */
+    public enum OverflowPolicy{
+        /** drop the oldest queued event */
+        DROP_OLDEST,
+        /** drop the new event */
+        DROP_NEWEST,
+        /** only keep the latest event. the capacity is ignored. */
+        LATEST_ONLY
+    }
+
+    /**
+     * create queued live event
+     * @param capacity the capacity of queue
+     * @param policy the overflow policy
+     */
+    public QueuedLiveEvent(int capacity, OverflowPolicy policy) {
+        super(false);
+        if(capacity <= 0){
+            throw new IllegalArgumentException("capacity must > 0");
+        }
+        this.mBuffer = new Object[policy == OverflowPolicy.LATEST_ONLY ? 1 : capacity];
+        this.mPolicy = policy;
+    }
+
+    @MainThread
+    @Override
+    public void setValue(@Nullable T t) {
+        //enqueue first. keep the order with the queued events.
+        synchronized (mBuffer){
+            enqueue(t);
+        }
+        drain();
+    }
+
+    @Override
+    public void postValue(T value) {
+        boolean schedule = false;
+        synchronized (mBuffer){
+            enqueue(value);
+            if(!mDrainScheduled){
+                mDrainScheduled = true;
+                schedule = true;
+            }
+        }
+        if(schedule){
+            ArchTaskExecutor.getInstance().postToMainThread(mDrainTask);
+        }
+    }
+
+    /**
+     * get the count of queued events
+     * @return the count
+     */
+    public int getQueuedCount(){
+        synchronized (mBuffer){
+            return mSize;
+        }
+    }
+
+    /**
+     * clear the queued events
+     */
+    public void clearQueue(){
+        synchronized (mBuffer){
+            for (int i = 0; i < mBuffer.length; i++) {
+                mBuffer[i] = null;
+            }
+            mHead = 0;
+            mSize = 0;
+        }
+    }
+
+    @Override
+    protected void onActive() {
+        super.onActive();
+        drain();
+    }
+
+    //called with lock
+    private void enqueue(Object t){
+        final int capacity = mBuffer.length;
+        if(mSize < capacity){
+            mBuffer[(mHead + mSize) % capacity] = t;
+            mSize ++;
+            return;
+        }
+        switch (mPolicy){
+            case DROP_OLDEST:
+            case LATEST_ONLY:
+                mBuffer[mHead] = t;
+                mHead = (mHead + 1) % capacity;
+                break;
+
+            case DROP_NEWEST:
+                break;
+        }
+    }
+
+    //main thread. stop if the observer becomes inactive during dispatch.
+    @SuppressWarnings("unchecked")
+    private void drain(){
+        for (;;){
+            T t;
+            synchronized (mBuffer){
+                if(mSize == 0 || !hasActiveObservers()){
+                    return;
+                }
+                t = (T) mBuffer[mHead];
+                mBuffer[mHead] = null;
+                mHead = (mHead + 1) % mBuffer.length;
+                mSize --;
+            }
+            super.setValue(t);
+        }
+    }
+}
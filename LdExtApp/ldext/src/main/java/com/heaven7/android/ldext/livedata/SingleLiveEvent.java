@@ -16,10 +16,6 @@
 
 package com.heaven7.android.ldext.livedata;
 
-import androidx.annotation.MainThread;
-import androidx.lifecycle.LifecycleOwner;
-import androidx.lifecycle.Observer;
-
 /**
  * A lifecycle-aware observable that sends only new updates after subscription, used for events like
  * navigate and Snackbar messages.
@@ -28,7 +24,7 @@ import androidx.lifecycle.Observer;
  * can be emitted if the observer is active. This LiveData only calls the observable if there's an
  * explicit call to setValue() or call().
  * <p>
- * Note that only one observer is going to be notified of changes.
+ * Every observer is notified of a change once. the new observer only receive the value which is not delivered to anyone.
  */
 public class SingleLiveEvent<T> extends AbsoluteLiveData<T> {
 
@@ -45,12 +41,6 @@ public class SingleLiveEvent<T> extends AbsoluteLiveData<T> {
         super();
     }
 
-    @MainThread
-    @Override
-    public void observe(LifecycleOwner owner, final Observer<? super T> observer) {
-        removeObservers(owner);
-        super.observe(owner, observer);
-    }
     @Override
     protected boolean isSingle() {
         return true;
@@ -1,10 +1,19 @@
 package com.heaven7.android.ldext.livedata;
 
+import androidx.arch.core.executor.ArchTaskExecutor;
 import androidx.arch.core.util.Function;
 import androidx.lifecycle.LiveData;
 import androidx.lifecycle.MutableLiveData;
 import androidx.lifecycle.Observer;
 
+import com.heaven7.android.ldext.util.WeightedLruCache;
+import com.heaven7.java.base.util.Disposable;
+import com.heaven7.java.base.util.Scheduler;
+
+import java.lang.ref.Reference;
+import java.lang.ref.ReferenceQueue;
+import java.lang.ref.WeakReference;
+
 public class SingleSourceLiveData<T, R> extends MutableLiveData<R> {
 
     private LiveData<T> lastSource;
@@ -17,13 +26,97 @@ public class SingleSourceLiveData<T, R> extends MutableLiveData<R> {
                 return;
             }
             lastData = t;
-            setValue(mFunc.apply(t));
+            //the value is mapped before. e.g. switch back to the previous source.
+            final R cached = getMemo(lastSource, t);
+            if (cached != null) {
+                cancelMapping();
+                setValue(cached);
+            } else if (mScheduler != null) {
+                mapAsync(t);
+            } else {
+                R result = mFunc.apply(t);
+                putMemo(lastSource, t, result);
+                setValue(result);
+            }
+        }
+    };
+    private volatile Function<T, R> mFunc;
+
+    //async mapping. the latest input wins.
+    private Scheduler mScheduler;
+    private volatile long mMapSeq;
+    private Disposable mMapTask;
+    private final Object mResultLock = new Object();
+    private R mResult;
+    private MemoKey mResultKey;
+    private long mResultSeq;
+    private boolean mDeliverScheduled;
+    private final Runnable mDeliverTask = new Runnable() {
+        @Override
+        public void run() {
+            R result;
+            MemoKey key;
+            synchronized (mResultLock) {
+                mDeliverScheduled = false;
+                //superseded by the newer input or source.
+                if (mResultSeq != mMapSeq) {
+                    return;
+                }
+                result = mResult;
+                key = mResultKey;
+                mResult = null;
+                mResultKey = null;
+            }
+            mMapTask = null;
+            if (key != null && result != null) {
+                mMemo.put(key, result);
+            }
+            setValue(result);
         }
     };
-    private Function<T, R> mFunc;
 
+    //the memoization of mapping. only access on main thread.
+    private WeightedLruCache<Object, R> mMemo;
+    private boolean mMemoByEquality;
+    private final ReferenceQueue<Object> mMemoQueue = new ReferenceQueue<>();
+
+    /**
+     * set the map function. the in-flight mapping of the old function is dropped, and the memoized results are cleared.
+     * @param func the map function
+     */
     public void setMapFunction(Function<T, R> func) {
         this.mFunc = func;
+        cancelMapping();
+        if (mMemo != null) {
+            mMemo.clear();
+        }
+    }
+
+    /**
+     * set the memoization of mapping. the mapped results are cached by the source and the input, so switching back
+     * to a source (see {@linkplain #setSource(LiveData)}) re-emit the cached result without mapping again.
+     * the source and input are weakly referenced, so the cache doesn't pin them. the null input or result is not cached.
+     * <p>the results are strongly referenced until evicted. so a result which reference its input (or source) pins the key,
+     * and the entry only leave by the max count or weight.</p>
+     * @param maxCount the max count of cached results
+     * @param maxWeight the max total weight of cached results
+     * @param weigher the weigher of result. null means every result weight is 1.
+     * @param byEquality true to match the input by {@linkplain Object#equals(Object)}. false to match by identity.
+     */
+    public void setMemoization(int maxCount, long maxWeight, WeightedLruCache.Weigher<Object, ? super R> weigher,
+                               boolean byEquality) {
+        this.mMemo = new WeightedLruCache<>(maxCount, maxWeight, weigher);
+        this.mMemoByEquality = byEquality;
+    }
+
+    /**
+     * set the scheduler to map the value on worker thread. the latest input wins: the in-flight mapping is
+     * cancelled or its result is dropped when a newer value or a new source arrives. only the final result is
+     * delivered on the main thread.
+     * @param scheduler the scheduler. null to map on main thread.
+     */
+    public void setScheduler(Scheduler scheduler) {
+        this.mScheduler = scheduler;
     }
 
     public void setSource(LiveData<T> source) {
@@ -35,6 +128,7 @@ public class SingleSourceLiveData<T, R> extends MutableLiveData<R> {
             lastSource.removeObserver(observer);
         }
         lastSource = source;
+        cancelMapping();
 
         if (hasActiveObservers()) {
             lastSource.observeForever(observer);
@@ -58,5 +152,102 @@ public class SingleSourceLiveData<T, R> extends MutableLiveData<R> {
             lastSource.removeObserver(observer);
         }
     }
-}
 
+    private R getMemo(LiveData<T> source, T t) {
+        if (mMemo == null || t == null) {
+            return null;
+        }
+        purgeMemo();
+        return mMemo.get(new MemoKey(source, t, mMemoByEquality, null));
+    }
+    private void putMemo(LiveData<T> source, T t, R result) {
+        if (mMemo != null && t != null && result != null) {
+            mMemo.put(new MemoKey(source, t, mMemoByEquality, mMemoQueue), result);
+        }
+    }
+    //remove the entries whose input is collected.
+    private void purgeMemo() {
+        Reference<?> ref;
+        while ((ref = mMemoQueue.poll()) != null) {
+            mMemo.remove(ref);
+        }
+    }
+
+    private void mapAsync(final T t) {
+        cancelMapping();
+        final long seq = mMapSeq;
+        final MemoKey key = mMemo != null && t != null ? new MemoKey(lastSource, t, mMemoByEquality, mMemoQueue) : null;
+        mMapTask = mScheduler.newWorker().schedule(new Runnable() {
+            @Override
+            public void run() {
+                if (seq != mMapSeq) {
+                    return;
+                }
+                R result = mFunc.apply(t);
+                boolean schedule = false;
+                synchronized (mResultLock) {
+                    if (seq != mMapSeq) {
+                        return;
+                    }
+                    mResult = result;
+                    mResultKey = key;
+                    mResultSeq = seq;
+                    if (!mDeliverScheduled) {
+                        mDeliverScheduled = true;
+                        schedule = true;
+                    }
+                }
+                if (schedule) {
+                    ArchTaskExecutor.getInstance().postToMainThread(mDeliverTask);
+                }
+            }
+        });
+    }
+    //main thread. drop the in-flight mapping.
+    private void cancelMapping() {
+        synchronized (mResultLock) {
+            mMapSeq ++;
+            mResult = null;
+            mResultKey = null;
+        }
+        if (mMapTask != null) {
+            mMapTask.dispose();
+            mMapTask = null;
+        }
+    }
+
+    /**
+     * the memo key of source and input. which weakly reference them.
+     */
+    private static final class MemoKey extends WeakReference<Object> {
+        private final WeakReference<Object> source;
+        private final boolean byEquality;
+        private final int hash;
+
+        MemoKey(Object source, Object input, boolean byEquality, ReferenceQueue<Object> queue) {
+            super(input, queue);
+            this.source = new WeakReference<>(source);
+            this.byEquality = byEquality;
+            this.hash = 31 * System.identityHashCode(source)
+                    + (byEquality ? input.hashCode() : System.identityHashCode(input));
+        }
+        @Override
+        public boolean equals(Object o) {
+            if (this == o) return true;
+            if (!(o instanceof MemoKey)) return false;
+            MemoKey that = (MemoKey) o;
+            if (hash != that.hash) return false;
+            Object input = get();
+            Object source = this.source.get();
+            //the collected key only equals itself.
+            if (input == null || source == null || source != that.source.get()) {
+                return false;
+            }
+            return byEquality ? input.equals(that.get()) : input == that.get();
+        }
+        @Override
+        public int hashCode() {
+            return hash;
+        }
+    }
+}
@@ -21,22 +21,64 @@ public class Resource<T> {
     @Nullable
     public final T data;
 
+    /** the attempt number of the request. 1 means the first attempt. */
+    public final int attempt;
+
+    /** the sequence number which is assigned by the issuing resource. larger means newer. 0 means not stamped.
+     * the shared data-less states (see {@linkplain #loading(Object)}) are never stamped, they carry no data which can be
+     * stale. the other stamped one is a copy (see {@linkplain #withSeq(long)}). */
+    public final long seq;
+
+    /** the error code of the request which exceed the deadline */
+    public static final int CODE_TIMEOUT = -2;
+
+    private static final Resource<?> LOADING = new Resource<>(Status.LOADING, null, 0, null);
+    private static final Resource<?> ERROR = new Resource<>(Status.ERROR, null, -1, null);
+
+    /** the content hash is not computed yet */
+    private static final int UNHASHED = Integer.MIN_VALUE;
+
+    //one field. so the reader never sees the flag without the hash.
+    private volatile int mContentHash = UNHASHED;
+
     public Resource(@NonNull Status status, @Nullable T data, @Nullable int code, @Nullable String message) {
+        this(status, data, code, message, 1);
+    }
+    public Resource(@NonNull Status status, @Nullable T data, @Nullable int code, @Nullable String message, int attempt) {
+        this(status, data, code, message, attempt, 0);
+    }
+    public Resource(@NonNull Status status, @Nullable T data, @Nullable int code, @Nullable String message, int attempt, long seq) {
         this.status = status;
         this.data = data;
         this.code = code;
         this.message = message;
+        this.attempt = attempt;
+        this.seq = seq;
     }
 
     public static <T> Resource<T> success(@Nullable T data) {
         return new Resource<>(Status.SUCCESS, data, 0, null);
     }
 
+    /**
+     * create the error resource
+     * @param data the data. if null the shared instance is returned.
+     * @param <T> the data type
+     * @return the resource
+     */
+    @SuppressWarnings("unchecked")
     public static <T> Resource<T> error(@Nullable T data) {
+        if (data == null) {
+            return (Resource<T>) ERROR;
+        }
         return new Resource<>(Status.ERROR, data, -1, null);
     }
 
+    @SuppressWarnings("unchecked")
     public static <T> Resource<T> error(@Nullable String message) {
+        if (message == null) {
+            return (Resource<T>) ERROR;
+        }
         return new Resource<>(Status.ERROR, null, -1, message);
     }
 
@@ -44,10 +86,69 @@ public class Resource<T> {
         return new Resource<>(Status.ERROR, null, code, message);
     }
 
+    /**
+     * create the timeout error resource. see {@linkplain #CODE_TIMEOUT}.
+     * @param data the last data. can be null.
+     * @param <T> the data type
+     * @return the resource
+     */
+    public static <T> Resource<T> timeout(@Nullable T data) {
+        return new Resource<>(Status.ERROR, data, CODE_TIMEOUT, "timeout");
+    }
+
+    /**
+     * create the loading resource
+     * @param data the data. if null the shared instance is returned.
+     * @param <T> the data type
+     * @return the resource
+     */
+    @SuppressWarnings("unchecked")
     public static <T> Resource<T> loading(@Nullable T data) {
+        if (data == null) {
+            return (Resource<T>) LOADING;
+        }
         return new Resource<>(Status.LOADING, data, 0, null);
     }
 
+    /**
+     * create the loading resource of the retry
+     * @param data the data
+     * @param attempt the attempt number. which is > 1 for retry.
+     * @param <T> the data type
+     * @return the resource
+     */
+    public static <T> Resource<T> loading(@Nullable T data, int attempt) {
+        if (attempt == 1) {
+            return loading(data);
+        }
+        return new Resource<>(Status.LOADING, data, 0, null, attempt);
+    }
+
+    /**
+     * get the resource which has the target sequence number. the shared data-less states are returned as is,
+     * so they are never copied and never carry the seq of any resource. the copy keeps the computed content hash
+     * (see {@linkplain #contentHash()}).
+     * @param seq the sequence number
+     * @return this if the sequence number is the same or this is a shared state. or else a copy.
+     */
+    public Resource<T> withSeq(long seq) {
+        if (this.seq == seq || this == LOADING || this == ERROR) {
+            return this;
+        }
+        Resource<T> copy = new Resource<>(status, data, code, message, attempt, seq);
+        copy.mContentHash = mContentHash;
+        return copy;
+    }
+
+    /**
+     * indicate this resource is newer than the other or not. the sequence number is not a part of {@linkplain #equals(Object)}.
+     * @param other the other resource
+     * @return true if newer
+     */
+    public boolean isNewerThan(@Nullable Resource<?> other) {
+        return other == null || seq > other.seq;
+    }
+
     @Override
     public boolean equals(Object o) {
         if (this == o) {
@@ -62,6 +163,9 @@ public class Resource<T> {
         if (status != resource.status) {
             return false;
         }
+        if (attempt != resource.attempt) {
+            return false;
+        }
         if (message != null ? !message.equals(resource.message) : resource.message != null) {
             return false;
         }
@@ -71,6 +175,7 @@ public class Resource<T> {
     @Override
     public int hashCode() {
         int result = status.hashCode();
+        result = 31 * result + attempt;
         result = 31 * result + (message != null ? message.hashCode() : 0);
         result = 31 * result + (data != null ? data.hashCode() : 0);
         return result;
@@ -82,9 +187,25 @@ public class Resource<T> {
                 "status=" + status +
                 ", message='" + message + '\'' +
                 ", data=" + data +
+                ", attempt=" + attempt +
+                ", seq=" + seq +
                 '}';
     }
 
+    /**
+     * get the hash of data. which is computed once and cached. this is thread-safe, the racing threads
+     * may compute it more than once but always get the same value.
+     * @return the content hash
+     */
+    public int contentHash() {
+        int hash = mContentHash;
+        if (hash == UNHASHED) {
+            hash = data != null ? data.hashCode() : 0;
+            mContentHash = hash;
+        }
+        return hash;
+    }
+
     public String toStateString() {
         switch (status){
             case ERROR:
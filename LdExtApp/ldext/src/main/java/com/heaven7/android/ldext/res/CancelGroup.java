@@ -0,0 +1,293 @@
+package com.heaven7.android.ldext.res;
+
+import android.os.SystemClock;
+
+import androidx.arch.core.executor.ArchTaskExecutor;
+
+import com.heaven7.java.base.util.Disposable;
+import com.heaven7.java.base.util.Scheduler;
+
+import java.util.Collections;
+import java.util.Set;
+import java.util.concurrent.ConcurrentHashMap;
+import java.util.concurrent.TimeUnit;
+
+/**
+ * the cancellation group of tasks. the task removes itself when it finish, so {@linkplain #cancel()} only visit the active tasks.
+ * the group can be nested (see {@linkplain #newChild()}), cancel a group also cancel all of its children.
+ * <p>the group is also the {@linkplain CancellationToken} of its work. the deadline of group (see {@linkplain #setTimeout(long)})
+ * is inherited by the children, a child never outlive the deadline of its parent.</p>
+ * <p>the group which is used as the token of one piece of work should be released (see {@linkplain #release()}) when
+ * the work is done. so its listeners don't pile up in the parent and don't fire on the later cancel.</p>
+ * @author heaven7
+ */
+public final class CancelGroup implements CancellationToken {
+
+    //created by the first entry. so the group without tasks and listeners (e.g: the token which is released
+    //before the source uses it) is only one object.
+    private volatile Set<Object> mEntries;
+    private final CancelGroup mParent;
+    private volatile boolean mCancelled;
+    private volatile boolean mReleased;
+    private volatile long mDeadline = -1;
+
+    public CancelGroup() {
+        this(null);
+    }
+    private CancelGroup(CancelGroup parent) {
+        this.mParent = parent;
+    }
+
+    /**
+     * create a child group. the child is removed from this group when it is cancelled.
+     * @return the child group. which is already cancelled if this group is cancelled.
+     */
+    public CancelGroup newChild(){
+        CancelGroup child = new CancelGroup(this);
+        entries().add(child);
+        if(mCancelled){
+            child.cancel();
+        }else if(mReleased){
+            child.release();
+        }
+        return child;
+    }
+
+    /**
+     * schedule the task on the worker. the task is removed from this group when it runs.
+     * @param worker the worker
+     * @param task the task
+     * @return the disposable to cancel the task only. which is already disposed if this group is cancelled.
+     */
+    public Disposable schedule(Scheduler.Worker worker, Runnable task){
+        Task t = new Task(task, false);
+        if(add(t)){
+            t.setDisposable(worker.schedule(t));
+        }else {
+            t.cancelled = true;
+        }
+        return t;
+    }
+    /**
+     * schedule the task on the worker with delay. the task is removed from this group when it runs.
+     * @param worker the worker
+     * @param task the task
+     * @param delay the delay
+     * @param unit the time unit
+     * @return the disposable to cancel the task only. which is already disposed if this group is cancelled.
+     */
+    public Disposable scheduleDelay(Scheduler.Worker worker, Runnable task, long delay, TimeUnit unit){
+        Task t = new Task(task, false);
+        if(add(t)){
+            t.setDisposable(worker.scheduleDelay(t, delay, unit));
+        }else {
+            t.cancelled = true;
+        }
+        return t;
+    }
+    /**
+     * schedule the task with delay, and run it on the main thread. the delay is timed by the worker, then the task is posted
+     * to main thread. it doesn't run if this group is cancelled before it reaches the main thread.
+     * @param worker the worker which time the delay
+     * @param task the task which run on main thread
+     * @param delay the delay
+     * @param unit the time unit
+     * @return the disposable to cancel the task only. which is already disposed if this group is cancelled.
+     */
+    public Disposable scheduleDelayOnMain(Scheduler.Worker worker, Runnable task, long delay, TimeUnit unit){
+        Task t = new Task(task, true);
+        if(add(t)){
+            t.setDisposable(worker.scheduleDelay(t, delay, unit));
+        }else {
+            t.cancelled = true;
+        }
+        return t;
+    }
+
+    /**
+     * set the timeout of this group. the deadline is the min of this and the deadline of parent.
+     * the group doesn't cancel itself when expired. the owner schedule the timeout task by {@linkplain #getRemainingTime()}.
+     * @param timeout the timeout in mills
+     */
+    public void setTimeout(long timeout){
+        mDeadline = SystemClock.elapsedRealtime() + timeout;
+    }
+
+    @Override
+    public long getRemainingTime(){
+        long deadline = -1;
+        for (CancelGroup g = this; g != null; g = g.mParent){
+            if(g.mDeadline >= 0 && (deadline < 0 || g.mDeadline < deadline)){
+                deadline = g.mDeadline;
+            }
+        }
+        if(deadline < 0){
+            return -1;
+        }
+        return Math.max(0, deadline - SystemClock.elapsedRealtime());
+    }
+
+    @Override
+    public void addCancelListener(Runnable listener){
+        if(mCancelled){
+            listener.run();
+            return;
+        }
+        if(mReleased){
+            return;
+        }
+        Set<Object> entries = entries();
+        entries.add(listener);
+        //cancelled during add. the one who removes it calls it.
+        if(mCancelled && entries.remove(listener)){
+            listener.run();
+        }else if(mReleased){
+            entries.remove(listener);
+        }
+    }
+
+    /**
+     * release this group without cancel. which is called when the work is done. the listeners are dropped without
+     * being called, the active tasks are disposed, the children are released, and this group is removed from parent.
+     * the released group never becomes cancelled.
+     */
+    public void release(){
+        if(mCancelled || mReleased){
+            return;
+        }
+        mReleased = true;
+        final Set<Object> entries = mEntries;
+        if(entries != null){
+            for (Object entry : entries){
+                if(entry instanceof Task){
+                    ((Task) entry).cancel();
+                }else if(entry instanceof CancelGroup){
+                    ((CancelGroup) entry).release();
+                }
+            }
+            entries.clear();
+        }
+        if(mParent != null){
+            mParent.remove(this);
+        }
+    }
+
+    /**
+     * cancel all active tasks, children and listeners. and remove this group from parent.
+     */
+    public void cancel(){
+        if(mCancelled || mReleased){
+            return;
+        }
+        mCancelled = true;
+        final Set<Object> entries = mEntries;
+        if(entries != null){
+            for (Object entry : entries){
+                if(entry instanceof Task){
+                    ((Task) entry).cancel();
+                }else if(entry instanceof CancelGroup){
+                    ((CancelGroup) entry).cancel();
+                }else if(entries.remove(entry)){
+                    ((Runnable) entry).run();
+                }
+            }
+            entries.clear();
+        }
+        if(mParent != null){
+            mParent.remove(this);
+        }
+    }
+    @Override
+    public boolean isCancelled(){
+        return mCancelled;
+    }
+    /**
+     * get the count of active tasks and children.
+     * @return the count
+     */
+    public int getActiveCount(){
+        Set<Object> entries = mEntries;
+        return entries != null ? entries.size() : 0;
+    }
+
+    private Set<Object> entries(){
+        Set<Object> entries = mEntries;
+        if(entries == null){
+            synchronized (this){
+                entries = mEntries;
+                if(entries == null){
+                    entries = Collections.newSetFromMap(new ConcurrentHashMap<Object, Boolean>());
+                    mEntries = entries;
+                }
+            }
+        }
+        return entries;
+    }
+    private void remove(Object entry){
+        Set<Object> entries = mEntries;
+        if(entries != null){
+            entries.remove(entry);
+        }
+    }
+    private boolean add(Object entry){
+        if(mCancelled || mReleased){
+            return false;
+        }
+        Set<Object> entries = entries();
+        entries.add(entry);
+        //cancelled or released during add
+        if(mCancelled || mReleased){
+            entries.remove(entry);
+            return false;
+        }
+        return true;
+    }
+
+    private final class Task implements Runnable, Disposable{
+        final Runnable base;
+        final boolean onMain;
+        volatile Disposable disposable;
+        volatile boolean cancelled;
+        volatile boolean posted;
+
+        Task(Runnable base, boolean onMain) {
+            this.base = base;
+            this.onMain = onMain;
+        }
+        void setDisposable(Disposable d){
+            this.disposable = d;
+            if(cancelled){
+                d.dispose();
+            }
+        }
+        void cancel(){
+            cancelled = true;
+            Disposable d = disposable;
+            if(d != null){
+                d.dispose();
+            }
+        }
+        @Override
+        public void dispose() {
+            cancel();
+            remove(this);
+        }
+        @Override
+        public void run() {
+            //the first run is on the worker. hop to main thread and keep the task active until it runs there.
+            if(onMain && !posted){
+                posted = true;
+                if(!cancelled && !mCancelled){
+                    ArchTaskExecutor.getInstance().postToMainThread(this);
+                }else {
+                    remove(this);
+                }
+                return;
+            }
+            remove(this);
+            if(!cancelled && !mCancelled){
+                base.run();
+            }
+        }
+    }
+}
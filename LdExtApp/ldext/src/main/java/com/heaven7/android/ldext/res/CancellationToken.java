@@ -0,0 +1,29 @@
+package com.heaven7.android.ldext.res;
+
+/**
+ * the cancellation token which is passed to the source (see {@linkplain NetworkResource#createNetwork(CancellationToken)}).
+ * the source should stop its in-flight io when the token is cancelled.
+ * @author heaven7
+ */
+public interface CancellationToken {
+
+    /**
+     * indicate the work is cancelled or not. the blocking source can poll this.
+     * @return true if cancelled
+     */
+    boolean isCancelled();
+
+    /**
+     * add the cancel listener. which is called once on the thread that cancel. if the token is already cancelled,
+     * the listener is called immediately. the listener is dropped without being called once the work is done.
+     * @param listener the listener. often abort the http call or close the stream.
+     */
+    void addCancelListener(Runnable listener);
+
+    /**
+     * get the remaining time of the deadline. the nested work should not exceed it.
+     * (e.g. set it as the http timeout, or as the timeout of the nested resource)
+     * @return the remaining time in mills. 0 means expired, -1 means no deadline.
+     */
+    long getRemainingTime();
+}
@@ -0,0 +1,140 @@
+package com.heaven7.android.ldext.res;
+
+import com.heaven7.android.ldext.model.Resource;
+
+import java.util.Comparator;
+import java.util.Objects;
+
+/**
+ * the change detector which decide the new resource should be emitted or not. for the large payload
+ * use {@linkplain #identity()}, {@linkplain #version()} or {@linkplain #contentHash()} to compare in O(1).
+ * @param <R> the data type
+ * @author heaven7
+ */
+public abstract class ChangeDetector<R> {
+
+    private static final ChangeDetector<Object> EQUALITY = new ChangeDetector<Object>() {
+        @Override
+        public boolean isSame(Resource<Object> old, Resource<Object> now) {
+            return Objects.equals(old, now);
+        }
+    };
+    private static final ChangeDetector<Object> IDENTITY = new ChangeDetector<Object>() {
+        @Override
+        public boolean isSame(Resource<Object> old, Resource<Object> now) {
+            return isSameState(old, now) && old.data == now.data;
+        }
+    };
+    private static final ChangeDetector<Object> VERSION = new ChangeDetector<Object>() {
+        @Override
+        public boolean isSame(Resource<Object> old, Resource<Object> now) {
+            if(!isSameState(old, now)){
+                return false;
+            }
+            if(old.data instanceof Versioned && now.data instanceof Versioned){
+                return ((Versioned) old.data).getVersion() == ((Versioned) now.data).getVersion();
+            }
+            return old.data == now.data;
+        }
+    };
+    private static final ChangeDetector<Object> CONTENT_HASH = new ChangeDetector<Object>() {
+        @Override
+        public boolean isSame(Resource<Object> old, Resource<Object> now) {
+            if(!isSameState(old, now)){
+                return false;
+            }
+            if(old.data == now.data){
+                return true;
+            }
+            //the hash is only the fast check of changed. the same hash may collide, so confirm it by equals.
+            return old.contentHash() == now.contentHash() && Objects.equals(old.data, now.data);
+        }
+    };
+
+    /**
+     * indicate the two resources are the same or not. the same resource is not emitted.
+     * @param old the old resource. never null.
+     * @param now the new resource. never null.
+     * @return true if same
+     */
+    public abstract boolean isSame(Resource<R> old, Resource<R> now);
+
+    /**
+     * the detector which compare by {@linkplain Resource#equals(Object)}. which deep-compare the data. this is the default.
+     * @param <R> the data type
+     * @return the detector
+     */
+    @SuppressWarnings("unchecked")
+    public static <R> ChangeDetector<R> equality(){
+        return (ChangeDetector<R>) EQUALITY;
+    }
+    /**
+     * the detector which compare the data by identity.
+     * @param <R> the data type
+     * @return the detector
+     */
+    @SuppressWarnings("unchecked")
+    public static <R> ChangeDetector<R> identity(){
+        return (ChangeDetector<R>) IDENTITY;
+    }
+    /**
+     * the detector which compare the version stamp of data (see {@linkplain Versioned}). if the data is not versioned,
+     * compare by identity.
+     * @param <R> the data type
+     * @return the detector
+     */
+    @SuppressWarnings("unchecked")
+    public static <R> ChangeDetector<R> version(){
+        return (ChangeDetector<R>) VERSION;
+    }
+    /**
+     * the detector which use the content hash of data as the fast check of changed. the hash is computed once per
+     * resource and kept by the stamped copy (see {@linkplain Resource#contentHash()}), so the changed data is found
+     * in O(1) after the first compare. the same hash is still confirmed by {@linkplain Object#equals(Object)}, so the
+     * collision is never dropped, and the unchanged data costs a full equals.
+     * @param <R> the data type
+     * @return the detector
+     */
+    @SuppressWarnings("unchecked")
+    public static <R> ChangeDetector<R> contentHash(){
+        return (ChangeDetector<R>) CONTENT_HASH;
+    }
+    /**
+     * the detector which compare the data by comparator.
+     * @param comparator the comparator. 0 means same.
+     * @param <R> the data type
+     * @return the detector
+     */
+    public static <R> ChangeDetector<R> comparator(final Comparator<? super R> comparator){
+        return new ChangeDetector<R>() {
+            @Override
+            public boolean isSame(Resource<R> old, Resource<R> now) {
+                if(!isSameState(old, now)){
+                    return false;
+                }
+                if(old.data == now.data){
+                    return true;
+                }
+                return old.data != null && now.data != null && comparator.compare(old.data, now.data) == 0;
+            }
+        };
+    }
+
+    /**
+     * indicate the two resources have the same state or not. the data is not compared.
+     * @param old the old resource
+     * @param now the new resource
+     * @return true if the status, code, message and attempt are the same.
+     */
+    protected static boolean isSameState(Resource<?> old, Resource<?> now){
+        return old.status == now.status && old.code == now.code && old.attempt == now.attempt
+                && Objects.equals(old.message, now.message);
+    }
+
+    /**
+     * the data which has a version stamp. the version should change when the content changes.
+     */
+    public interface Versioned{
+        long getVersion();
+    }
+}
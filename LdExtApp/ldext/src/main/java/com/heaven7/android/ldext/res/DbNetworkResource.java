@@ -7,10 +7,12 @@ import androidx.lifecycle.Observer;
 
 import com.heaven7.android.ldext.model.Resource;
 import com.heaven7.android.ldext.model.Status;
+import com.heaven7.android.ldext.util.PriorityScheduler;
 import com.heaven7.java.base.util.Disposable;
 import com.heaven7.java.base.util.Scheduler;
 
-import java.util.Objects;
+import java.util.concurrent.TimeUnit;
+import java.util.concurrent.atomic.AtomicReference;
 
 /**
  * the multi source
@@ -19,106 +21,529 @@ import java.util.Objects;
  */
 public abstract class DbNetworkResource<R, N> {
 
+    private static final int STATE_IDLE      = 0;
+    private static final int STATE_LOAD_DB   = 1;
+    private static final int STATE_FETCH     = 2;
+    private static final int STATE_PARALLEL  = 3;
+    private static final int STATE_SAVE      = 4;
+
     private final MediatorLiveData<Resource<R>> mResultLD = new MediatorLiveData<>();
     private final Scheduler mScheduler;
-    private volatile Disposable mTask1;
-    private volatile Disposable mTask2;
+    private final CancelGroup mGroup = new CancelGroup();
+    private volatile CancelGroup mGeneration;
+    private ResourceCache mCache;
+    private long mCacheTtl;
+    private boolean mParallel;
+    private RetryPolicy mRetryPolicy;
+    private int mAttempt;
+    private volatile long mSeq;
+    private WriteBehindQueue mWriteBehind;
+    private ChangeDetector<R> mChangeDetector = ChangeDetector.equality();
+    private PriorityScheduler.Priority mPriority = PriorityScheduler.Priority.VISIBLE;
+    private long mTimeout;
+    private RateLimiter mRateLimiter;
+    //the terminal state. guarded by mLock.
+    private final Object mLock = new Object();
+    private long mCompletedSeq;
+    private Disposable mPendingTimeout;
+    //the last posted value and its seq. guarded by mEmitLock.
+    private final Object mEmitLock = new Object();
+    private Resource<R> mEmitted;
+    private long mEmittedSeq;
+    //the key which is marked by the limiter for the in-flight fetch. reset if the fetch doesn't succeed.
+    private final AtomicReference<Object> mLimitedKey = new AtomicReference<>();
+
+    //the state of current generation. only access on main thread.
+    private int mState = STATE_IDLE;
+    private boolean mDbArrived;
+    private boolean mNetworkDone;
+    private boolean mNetworkFailed;
+    private R mDbData;
+
+    //the in-flight state. the observers and tasks are reused by every start.
+    private volatile LiveData<Resource<N>> mNetwork;
+    private CancelGroup mNetworkToken;
+    private volatile N mSaveData;
+    private final MutableLiveData<R> mDbLD = new MutableLiveData<>();
+    private final Object mDbLock = new Object();
+    private volatile long mDbSeq;
+    private volatile boolean mDbReload;
+
+    private final Observer<R> mDbObserver = new Observer<R>() {
+        @Override
+        public void onChanged(R data) {
+            if(mDbSeq == mSeq && isActive()){
+                onDbLoaded(data, mDbReload);
+            }
+        }
+    };
+    private final Observer<Resource<N>> mNetworkObserver = new Observer<Resource<N>>() {
+        @Override
+        public void onChanged(Resource<N> res) {
+            onNetworkResult(res);
+        }
+    };
+    private final Runnable mLoadDbTask = new Runnable() {
+        @Override
+        public void run() {
+            loadDb(false);
+        }
+    };
+    private final Runnable mSaveTask = new Runnable() {
+        @Override
+        public void run() {
+            final N data = mSaveData;
+            mSaveData = null;
+            saveNetworkData(map(data));
+            loadDb(true);
+        }
+    };
+    private final Runnable mRetryTask = new Runnable() {
+        @Override
+        public void run() {
+            if(!mNetworkDone){
+                attachNetwork();
+            }
+        }
+    };
+    private final Runnable mTimeoutTask = new Runnable() {
+        @Override
+        public void run() {
+            onTimeout();
+        }
+    };
 
     public DbNetworkResource(Scheduler mScheduler) {
         this.mScheduler = mScheduler;
+        //the db hop is attached once. the values of the superseded generation are dropped by the db seq.
+        mResultLD.addSource(mDbLD, mDbObserver);
+    }
+
+    /**
+     * set the in-memory cache. when start, a fresh hit emit success directly without db and network.
+     * a stale hit emit loading with the cached data and revalidate as normal.
+     * the cache key is the request-key (see {@linkplain #getRequestKey()}).
+     * @param cache the cache. null to disable.
+     * @param ttl the time-to-live in mills of the data which is put by this resource.
+     */
+    public void setCache(ResourceCache cache, long ttl) {
+        this.mCache = cache;
+        this.mCacheTtl = ttl;
+    }
+
+    /**
+     * set parallel mode. in parallel mode the db-read and the network-fetch start at the same time.
+     * the db data is emitted as loading once it arrives, and is dropped if the network wins the race.
+     * if {@linkplain #shouldFetch(Object)} return false for the db data, the in-flight network is cancelled.
+     * @param parallel true to enable parallel mode. default is false.
+     */
+    public void setParallel(boolean parallel) {
+        this.mParallel = parallel;
+    }
+
+    /**
+     * set the retry policy. when the network failed and the policy allows, the fetch is retried after a backoff delay.
+     * the intermediate loading carries the db data and the attempt number (see {@linkplain Resource#attempt}).
+     * @param policy the retry policy. null to disable.
+     */
+    public void setRetryPolicy(RetryPolicy policy) {
+        this.mRetryPolicy = policy;
+    }
+
+    /**
+     * set the write-behind queue. the network data is saved in batch with the other resources,
+     * and the db is re-read after the batch commits.
+     * @param queue the queue. null to save directly.
+     */
+    public void setWriteBehindQueue(WriteBehindQueue queue) {
+        this.mWriteBehind = queue;
+    }
+
+    /**
+     * set the change detector which decide the new resource should be emitted or not.
+     * @param detector the detector. default is {@linkplain ChangeDetector#equality()}.
+     */
+    public void setChangeDetector(ChangeDetector<R> detector) {
+        this.mChangeDetector = detector;
+    }
+
+    /**
+     * set the priority of the work. only works when the scheduler is {@linkplain PriorityScheduler}.
+     * @param priority the priority. default is {@linkplain PriorityScheduler.Priority#VISIBLE}.
+     */
+    public void setPriority(PriorityScheduler.Priority priority) {
+        this.mPriority = priority;
+    }
+
+    /**
+     * set the timeout of every request. which include the db-read, the network-fetch with retries, and the save.
+     * when expired, the error with {@linkplain Resource#CODE_TIMEOUT} is emitted, and the in-flight work is cancelled.
+     * the remaining time is exposed to the source by {@linkplain CancellationToken#getRemainingTime()}.
+     * @param timeout the timeout in mills. 0 means no timeout.
+     */
+    public void setTimeout(long timeout) {
+        this.mTimeout = timeout;
+    }
+
+    /**
+     * set the rate limiter of refetch. the db data is used without network if the request key (see {@linkplain #getRequestKey()})
+     * was fetched in the window of limiter. the key is reset when the fetch failed, timeout or cancelled.
+     * <p>the limiter is consulted after {@linkplain #shouldFetch(Object)}, and the null db data always fetch.
+     * in the parallel mode the limiter is consulted on start, the limited request loads the db first as the serial mode.</p>
+     * @param limiter the rate limiter. null to disable.
+     */
+    public void setRateLimiter(RateLimiter limiter) {
+        this.mRateLimiter = limiter;
     }
 
     public void cancel(){
-        if(mTask1 != null){
-            mTask1.dispose();
-            mTask1 = null;
-        }
-        if(mTask2 != null){
-            mTask2.dispose();
-            mTask2 = null;
+        CancelGroup generation = mGeneration;
+        if(generation != null){
+            mGeneration = null;
+            generation.cancel();
         }
+        detachNetwork();
+        //the cancelled fetch doesn't count.
+        resetLimiter();
+        mState = STATE_IDLE;
     }
 
     public void start(){
         cancel();
-        //loading
-        Resource<R> resource = Resource.loading(null);
-        setValue(resource);
-
-        mTask1 = mScheduler.newWorker().schedule(new Runnable() {
-            @Override
-            public void run() {
-                final LiveData<R> dbSource = new MutableLiveData<R>(loadFromDb());
-                mResultLD.addSource(dbSource, new Observer<R>() {
-                    @Override
-                    public void onChanged(R data) {
-                        mResultLD.removeSource(dbSource);
-                        if (shouldFetch(data)) {
-                            fetchFromNetwork(dbSource);
-                        } else {
-                            mResultLD.addSource(dbSource, new Observer<R>() {
-                                @Override
-                                public void onChanged(R newData) {
-                                    setValue(Resource.success(newData));
-                                }
-                            });
-                        }
-                    }
-                });
-                mTask1 = null;
+        final CancelGroup generation = mGroup.newChild();
+        mGeneration = generation;
+        mAttempt = 1;
+        final long seq;
+        synchronized (mDbLock){
+            seq = ++mSeq;
+        }
+        final Object key = getRequestKey();
+        ResourceCache.Entry<R> entry = mCache != null && key != null ? mCache.<R>get(key) : null;
+        if(entry != null && entry.isFresh()){
+            setValue(Resource.success(entry.data), seq);
+            return;
+        }
+        //loading. stale data is emitted while revalidate.
+        setValue(Resource.loading(entry != null ? entry.data : null), seq);
+
+        mDbArrived = false;
+        mNetworkDone = false;
+        mNetworkFailed = false;
+        mDbData = null;
+        if(mTimeout > 0){
+            generation.setTimeout(mTimeout);
+            Disposable task = generation.scheduleDelayOnMain(newWorker(), mTimeoutTask, mTimeout, TimeUnit.MILLISECONDS);
+            synchronized (mLock){
+                mPendingTimeout = task;
             }
-        });
+        }
+        //the network may win the race before the db data arrives. so the limiter is consulted here.
+        if(mParallel && acquireLimiter(false)){
+            mState = STATE_PARALLEL;
+            attachNetwork();
+        }else {
+            mState = STATE_LOAD_DB;
+        }
+        generation.schedule(newWorker(), mLoadDbTask);
     }
 
-    private void fetchFromNetwork(final LiveData<R> dbSource){
-        final LiveData<Resource<N>> network = createNetwork();
-        mResultLD.addSource(dbSource, new Observer<R>() {
-            @Override
-            public void onChanged(R newData) {
-                setValue(Resource.loading(newData));
+    //main thread. the db data of current generation.
+    private void onDbLoaded(R data, boolean reload){
+        final long seq = mSeq;
+        switch (mState){
+            case STATE_LOAD_DB:
+                mDbArrived = true;
+                mDbData = data;
+                if (needFetch(data)) {
+                    mState = STATE_FETCH;
+                    setValue(Resource.loading(data, mAttempt), seq);
+                    attachNetwork();
+                } else {
+                    mState = STATE_IDLE;
+                    putCache(data);
+                    setValue(Resource.success(data), seq);
+                }
+                break;
+
+            case STATE_PARALLEL:
+                if(reload || mDbArrived){
+                    return;
+                }
+                mDbArrived = true;
+                mDbData = data;
+                if(mNetworkFailed){
+                    mState = STATE_IDLE;
+                    setValue(Resource.error(data), seq);
+                    return;
+                }
+                //the limiter is already consulted on start.
+                if(shouldFetch(data)){
+                    setValue(Resource.loading(data, mAttempt), seq);
+                }else {
+                    //cancel the in-flight network. which doesn't count.
+                    detachNetwork();
+                    resetLimiter();
+                    mNetworkDone = true;
+                    mState = STATE_IDLE;
+                    putCache(data);
+                    setValue(Resource.success(data), seq);
+                }
+                break;
+
+            case STATE_SAVE:
+            case STATE_IDLE:
+                //network wins the race. drop the first db data.
+                //the idle state still accept the reload, which may race with the first db data of this generation.
+                if(!reload){
+                    return;
+                }
+                mState = STATE_IDLE;
+                putCache(data);
+                setValue(Resource.success(data), seq);
+                break;
+        }
+    }
+    //main thread. the network source is detached when cancel. so the observer only see the current generation.
+    private void onNetworkResult(Resource<N> res){
+        //timeout
+        if(!isActive()){
+            detachNetwork();
+            return;
+        }
+        if(res.status == Status.LOADING){
+            return;
+        }
+        detachNetwork();
+        final long seq = mSeq;
+        if(res.status == Status.SUCCESS){
+            mNetworkDone = true;
+            saveAndReload(res.data);
+            return;
+        }
+        if(scheduleRetry(res, mDbData, seq)){
+            return;
+        }
+        mNetworkDone = true;
+        onFetchFailed();
+        if(mDbArrived){
+            mState = STATE_IDLE;
+            setValue(Resource.error(mDbData), seq);
+        }else {
+            //wait db data to emit error.
+            mNetworkFailed = true;
+        }
+    }
+    private boolean needFetch(R data){
+        //nothing to show. always fetch.
+        return shouldFetch(data) && acquireLimiter(data == null);
+    }
+    //return true if the limiter allows the fetch. the key is marked, and reset if the fetch doesn't succeed.
+    private boolean acquireLimiter(boolean force){
+        Object key;
+        if(mRateLimiter == null || (key = getRequestKey()) == null){
+            return true;
+        }
+        if(force){
+            mRateLimiter.markFetched(key);
+        }else if(!mRateLimiter.shouldFetch(key)){
+            return false;
+        }
+        mLimitedKey.set(key);
+        return true;
+    }
+    private void resetLimiter(){
+        Object key = mLimitedKey.getAndSet(null);
+        if(key != null && mRateLimiter != null){
+            mRateLimiter.reset(key);
+        }
+    }
+    private void attachNetwork(){
+        CancelGroup generation = mGeneration;
+        if(generation == null){
+            return;
+        }
+        //one token per attempt. which is released when the attempt is done.
+        CancelGroup token = generation.newChild();
+        mNetworkToken = token;
+        LiveData<Resource<N>> network = createNetwork(token);
+        mNetwork = network;
+        mResultLD.addSource(network, mNetworkObserver);
+    }
+    //detach the source. and stop the in-flight io if the source is disposable.
+    private void detachNetwork(){
+        if(mNetworkToken != null){
+            mNetworkToken.release();
+            mNetworkToken = null;
+        }
+        LiveData<Resource<N>> network = mNetwork;
+        if(network != null){
+            mNetwork = null;
+            mResultLD.removeSource(network);
+            if(network instanceof Disposable){
+                ((Disposable) network).dispose();
             }
-        });
-        mResultLD.addSource(network, new Observer<Resource<N>>() {
-            @Override
-            public void onChanged(final Resource<N> res) {
-                //remove source after network success.
-                mResultLD.removeSource(network);
-                mResultLD.removeSource(dbSource);
-                if (res.status == Status.SUCCESS) {
-                    mTask2 = mScheduler.newWorker().schedule(new Runnable() {
-                        @Override
-                        public void run() {
-                            saveNetworkData(map(res.data));
-                            final LiveData<R> src = new MutableLiveData<R>(loadFromDb());
-                            mResultLD.addSource(src, new Observer<R>() {
-                                @Override
-                                public void onChanged(R newData) {
-                                    setValue(Resource.success(newData));
-                                }
-                            });
-                            mTask2 = null;
-                        }
-                    });
-                }else if(res.status == Status.ERROR){
-                    onFetchFailed();
-                    mResultLD.addSource(dbSource, new Observer<R>() {
-                        @Override
-                        public void onChanged(R newData) {
-                            setValue(Resource.error(newData));
-                        }
-                    });
+        }
+    }
+    private void saveAndReload(final N data){
+        final CancelGroup generation = mGeneration;
+        if(generation == null){
+            return;
+        }
+        final long seq = mSeq;
+        mState = STATE_SAVE;
+        if(mWriteBehind != null){
+            mWriteBehind.enqueue(new WriteBehindQueue.PendingWrite<N>(data) {
+                @Override
+                protected void save(N data) {
+                    saveNetworkData(map(data));
                 }
+                @Override
+                protected void onCommitted() {
+                    if(!generation.isCancelled()){
+                        loadDb(true);
+                    }
+                }
+                @Override
+                protected void onFailed(RuntimeException e) {
+                    if(!generation.isCancelled()){
+                        //the db is not updated. keep the data on screen.
+                        Resource<R> last = mResultLD.getValue();
+                        setValue(Resource.error(last != null ? last.data : null), seq);
+                    }
+                }
+            });
+            return;
+        }
+        mSaveData = data;
+        generation.schedule(newWorker(), mSaveTask);
+    }
+    //worker thread
+    private void loadDb(boolean reload){
+        final long seq = mSeq;
+        final CancelGroup generation = mGeneration;
+        if(generation == null){
+            return;
+        }
+        //the token of this read. the listener of the query is dropped once the read is done.
+        final CancelGroup token = generation.newChild();
+        final R data;
+        try {
+            data = loadFromDb(token);
+        } finally {
+            token.release();
+        }
+        synchronized (mDbLock){
+            //superseded by the newer start. or timeout.
+            if(seq != mSeq || generation.isCancelled()){
+                return;
+            }
+            //the reload of this generation is already posted. the first read is out of date.
+            if(!reload && mDbSeq == seq && mDbReload){
+                return;
             }
-        });
+            mDbSeq = seq;
+            mDbReload = reload;
+            mDbLD.postValue(data);
+        }
+    }
+    //main thread. cancel the work but keep the generation. so the late result is dropped.
+    private void onTimeout(){
+        final CancelGroup generation = mGeneration;
+        if(generation == null){
+            return;
+        }
+        final long seq = mSeq;
+        Resource<R> last = mResultLD.getValue();
+        //the request may complete while the timeout hops to main thread.
+        if(setValue(Resource.timeout(last != null ? last.data : null), seq)){
+            generation.cancel();
+            detachNetwork();
+        }
+    }
+    //return true if this is the first terminal state of the generation. the timeout is disposed.
+    private boolean complete(long seq, boolean success){
+        synchronized (mLock){
+            if(seq <= mCompletedSeq){
+                return false;
+            }
+            mCompletedSeq = seq;
+            //the timeout of the superseded generation is cancelled with it.
+            if(seq == mSeq && mPendingTimeout != null){
+                mPendingTimeout.dispose();
+                mPendingTimeout = null;
+            }
+        }
+        //only the fetched and saved data keeps the mark of limiter. the failure and timeout refetch next time.
+        if(success){
+            mLimitedKey.set(null);
+        }else {
+            resetLimiter();
+        }
+        return true;
+    }
+    private boolean isActive(){
+        CancelGroup generation = mGeneration;
+        return generation != null && !generation.isCancelled();
+    }
+    //return true if the retry is scheduled.
+    private boolean scheduleRetry(Resource<N> res, R dbData, long seq){
+        final CancelGroup generation = mGeneration;
+        if(mRetryPolicy == null || generation == null || !mRetryPolicy.shouldRetry(mAttempt, res.code)){
+            return false;
+        }
+        long delay = mRetryPolicy.getDelay(mAttempt);
+        //the retry can't finish before the deadline.
+        long remaining = generation.getRemainingTime();
+        if(remaining >= 0 && delay >= remaining){
+            return false;
+        }
+        mAttempt ++;
+        setValue(Resource.loading(dbData, mAttempt), seq);
+        generation.scheduleDelayOnMain(newWorker(), mRetryTask, delay, TimeUnit.MILLISECONDS);
+        return true;
     }
     public LiveData<Resource<R>> asLiveData() {
         return mResultLD;
     }
 
-    private void setValue(final Resource<R> newValue) {
-        if (!Objects.equals(mResultLD.getValue(), newValue)) {
-            mResultLD.postValue(newValue);
+    private Scheduler.Worker newWorker(){
+        return PriorityScheduler.newWorker(mScheduler, mPriority);
+    }
+    private void putCache(R data){
+        Object key;
+        if(mCache != null && (key = getRequestKey()) != null){
+            mCache.put(key, data, mCacheTtl);
+        }
+    }
+    //return false if the value is dropped for superseded or completed.
+    private boolean setValue(final Resource<R> newValue, long seq) {
+        //drop the emission of the superseded generation.
+        if(seq != mSeq){
+            return false;
+        }
+        //only the first terminal state is emitted. e.g: the success which race with the timeout.
+        if(newValue.status != Status.LOADING && !complete(seq, newValue.status == Status.SUCCESS)){
+            return false;
+        }
+        //dedup only inside one generation. the same value of the newer generation is still emitted.
+        //the shared data-less states are not stamped, so the seq of posted value is kept here.
+        synchronized (mEmitLock){
+            Resource<R> old = mEmitted;
+            if (old == null || mEmittedSeq != seq || !mChangeDetector.isSame(old, newValue)) {
+                mEmitted = newValue;
+                mEmittedSeq = seq;
+                mResultLD.postValue(newValue.withSeq(seq));
+            }
         }
+        return true;
+    }
+    /**
+     * get the request key which identify the logical request. default is null. which is used as the cache key
+     * and the key of rate limiter.
+     * @return the request key.
+     */
+    protected Object getRequestKey(){
+        return null;
     }
     protected boolean shouldFetch(R data) {
         return true;
@@ -127,9 +552,31 @@ public abstract class DbNetworkResource<R, N> {
     }
     protected abstract R loadFromDb();
 
+    /**
+     * load from db with the cancellation token. which is cancelled when {@linkplain #cancel()} or the next {@linkplain #start()}.
+     * the long query can be aborted then. this is called on the worker thread. default is {@linkplain #loadFromDb()}.
+     * @param token the cancellation token
+     * @return the db data
+     */
+    protected R loadFromDb(CancellationToken token){
+        return loadFromDb();
+    }
+
     protected abstract R map(N data);
 
     protected abstract LiveData<Resource<N>> createNetwork();
 
+    /**
+     * create the network source with the cancellation token. which is cancelled when {@linkplain #cancel()}
+     * or the next {@linkplain #start()}. the source should abort the http call then.
+     * if the returned live data is {@linkplain Disposable}, it is also disposed when detached.
+     * default is {@linkplain #createNetwork()}.
+     * @param token the cancellation token
+     * @return the network live data
+     */
+    protected LiveData<Resource<N>> createNetwork(CancellationToken token){
+        return createNetwork();
+    }
+
     protected abstract void saveNetworkData(R data);
 }
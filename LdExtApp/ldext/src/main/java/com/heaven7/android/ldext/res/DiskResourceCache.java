@@ -0,0 +1,378 @@
+package com.heaven7.android.ldext.res;
+
+import android.util.Log;
+
+import com.heaven7.java.base.util.Scheduler;
+
+import java.io.File;
+import java.io.IOException;
+import java.io.RandomAccessFile;
+import java.nio.ByteBuffer;
+import java.nio.MappedByteBuffer;
+import java.nio.channels.FileChannel;
+import java.nio.charset.Charset;
+import java.util.ArrayList;
+import java.util.Collections;
+import java.util.Comparator;
+import java.util.HashSet;
+import java.util.List;
+import java.util.Map;
+import java.util.Set;
+import java.util.concurrent.ConcurrentHashMap;
+
+/**
+ * the persistent disk cache of resources. the entries are stored in an append-only file which is read by memory-mapping,
+ * and located by a compact in-memory index (key to offset and length). the index is built on the worker by
+ * {@linkplain #preload(Scheduler)} or the first {@linkplain #put(Object, Object, Codec)}. when the file exceed the max bytes,
+ * it is compacted: only the latest live entries are kept, and the oldest are dropped until the size is under the bound.
+ * <p>the file is grown geometrically and mapped as a whole, so the append only remaps when it outgrows the mapping.
+ * the end of records is kept in the header.</p>
+ * <p>the reads never block: {@linkplain #get(Object, Codec)} works on the shared concurrent index and the published
+ * mapping, and it never loads the index. every index entry carries the epoch of file which is bumped by compaction,
+ * the entry of other epoch is a miss. a get before the index is loaded just misses.</p>
+ * <p>file format: [long end][records]. record format: [int keyLength][key utf-8][int valueLength][value].
+ * the value length -1 means removed.</p>
+ * @author heaven7
+ */
+public final class DiskResourceCache {
+
+    private static final String TAG = "DiskResourceCache";
+    private static final Charset UTF_8 = Charset.forName("UTF-8");
+    private static final int TOMBSTONE = -1;
+    private static final int HEADER = 8;
+    private static final long INITIAL_CAPACITY = 4096;
+
+    private final File mFile;
+    private final long mMaxBytes;
+    //shared with readers. only the writer modifies it.
+    private final ConcurrentHashMap<String, Entry> mIndex = new ConcurrentHashMap<>();
+
+    //the writer state. guarded by this.
+    private final ByteBuffer mEnd = ByteBuffer.allocate(HEADER);
+    private RandomAccessFile mRaf;
+    private FileChannel mChannel;
+    private MappedByteBuffer mMapped;
+    private long mSize;
+    private int mEpoch;
+    private int mRemapCount;
+    private boolean mLoaded;
+    //the reader state. null means not loaded.
+    private volatile Snapshot mSnapshot;
+
+    /**
+     * create disk cache
+     * @param file the cache file
+     * @param maxBytes the max bytes of file. the file is compacted when exceed.
+     */
+    public DiskResourceCache(File file, long maxBytes) {
+        this.mFile = file;
+        this.mMaxBytes = maxBytes;
+    }
+
+    /**
+     * load the index on the worker. so the first get on main thread doesn't need to scan the file.
+     * @param scheduler the scheduler
+     */
+    public void preload(Scheduler scheduler){
+        scheduler.newWorker().schedule(new Runnable() {
+            @Override
+            public void run() {
+                synchronized (DiskResourceCache.this){
+                    ensureLoaded();
+                }
+            }
+        });
+    }
+
+    /**
+     * get the data of target key. this doesn't block on the writer and doesn't load the index,
+     * so it can be called on main thread.
+     * @param key the key
+     * @param codec the codec
+     * @param <R> the data type
+     * @return the data or null if not exists or the index is not loaded yet.
+     */
+    public <R> R get(Object key, Codec<R> codec){
+        final Snapshot snapshot = mSnapshot;
+        if(snapshot == null){
+            return null;
+        }
+        //the mapping which covers the entry is published before the entry.
+        Entry entry = mIndex.get(String.valueOf(key));
+        if(entry == null || entry.epoch != snapshot.epoch || entry.offset + entry.length > snapshot.mapped.capacity()){
+            return null;
+        }
+        try {
+            byte[] bytes = new byte[entry.length];
+            ByteBuffer buffer = snapshot.mapped.duplicate();
+            buffer.position((int) entry.offset);
+            buffer.get(bytes);
+            return codec.decode(bytes);
+        } catch (RuntimeException e) {
+            Log.w(TAG, "get: read failed. key = " + key, e);
+            return null;
+        }
+    }
+
+    /**
+     * put the data. this should be called on worker thread.
+     * @param key the key
+     * @param data the data. null means remove
+     * @param codec the codec
+     * @param <R> the data type
+     */
+    public synchronized <R> void put(Object key, R data, Codec<R> codec){
+        if(!ensureLoaded()){
+            return;
+        }
+        String k = String.valueOf(key);
+        try {
+            append(k, data != null ? codec.encode(data) : null);
+            if(mSize > mMaxBytes){
+                compact();
+            }
+        } catch (IOException e) {
+            Log.w(TAG, "put: write failed. key = " + key, e);
+            //reload on next access
+            close();
+        }
+    }
+    public void remove(Object key){
+        put(key, null, null);
+    }
+
+    /**
+     * get the count of remapping since created. the mapping is only replaced when the file grows over it or compacted.
+     * @return the remap count
+     */
+    public synchronized int getRemapCount(){
+        return mRemapCount;
+    }
+
+    public synchronized void close(){
+        mSnapshot = null;
+        closeQuietly();
+        mIndex.clear();
+        mLoaded = false;
+    }
+
+    //write the record and the end. the mapping is grown before the entry is visible.
+    private void append(String key, byte[] value) throws IOException {
+        byte[] keyBytes = key.getBytes(UTF_8);
+        int valueLength = value != null ? value.length : TOMBSTONE;
+        ByteBuffer buffer = ByteBuffer.allocate(8 + keyBytes.length + Math.max(valueLength, 0));
+        buffer.putInt(keyBytes.length).put(keyBytes).putInt(valueLength);
+        if(value != null){
+            buffer.put(value);
+        }
+        buffer.flip();
+        final long offset = mSize;
+        ensureCapacity(offset + buffer.limit());
+        write(buffer, offset);
+        mSize += buffer.limit();
+        writeEnd();
+        if(value != null){
+            mIndex.put(key, new Entry(offset + 8 + keyBytes.length, valueLength, mEpoch));
+        }else {
+            mIndex.remove(key);
+        }
+    }
+
+    //rewrite the live entries. the oldest are dropped until the size is under the half of max bytes.
+    private void compact() throws IOException {
+        List<Map.Entry<String, Entry>> entries = new ArrayList<>(mIndex.entrySet());
+        Collections.sort(entries, new Comparator<Map.Entry<String, Entry>>() {
+            @Override
+            public int compare(Map.Entry<String, Entry> o1, Map.Entry<String, Entry> o2) {
+                return Long.compare(o2.getValue().offset, o1.getValue().offset);
+            }
+        });
+        File tmp = new File(mFile.getPath() + ".tmp");
+        RandomAccessFile out = new RandomAccessFile(tmp, "rw");
+        try {
+            out.setLength(0);
+            out.writeLong(0);
+            long budget = mMaxBytes / 2;
+            long written = HEADER;
+            Set<String> kept = new HashSet<>();
+            //newest first
+            for (Map.Entry<String, Entry> e : entries){
+                byte[] keyBytes = e.getKey().getBytes(UTF_8);
+                int length = e.getValue().length;
+                long recordSize = 8 + keyBytes.length + length;
+                if(written + recordSize > budget){
+                    continue;
+                }
+                byte[] value = new byte[length];
+                ByteBuffer src = mMapped.duplicate();
+                src.position((int) e.getValue().offset);
+                src.get(value);
+                out.writeInt(keyBytes.length);
+                out.write(keyBytes);
+                out.writeInt(length);
+                out.write(value);
+                kept.add(e.getKey());
+                written += recordSize;
+            }
+            out.seek(0);
+            out.writeLong(written);
+            out.getFD().sync();
+            out.close();
+            closeQuietly();
+            if(!tmp.renameTo(mFile)){
+                throw new IOException("rename failed: " + tmp);
+            }
+            //the entries of old epoch miss until they are replaced by the scan.
+            mEpoch ++;
+            open();
+            scan();
+            mIndex.keySet().retainAll(kept);
+        } finally {
+            out.close();
+            if(tmp.exists()){
+                tmp.delete();
+            }
+        }
+    }
+
+    //return true if loaded
+    private boolean ensureLoaded(){
+        if(mLoaded){
+            return true;
+        }
+        try {
+            open();
+            scan();
+            mLoaded = true;
+        } catch (IOException e) {
+            Log.w(TAG, "load failed: " + mFile, e);
+            mSnapshot = null;
+            closeQuietly();
+            mIndex.clear();
+        }
+        return mLoaded;
+    }
+    private void open() throws IOException {
+        File dir = mFile.getParentFile();
+        if(dir != null && !dir.exists()){
+            dir.mkdirs();
+        }
+        mRaf = new RandomAccessFile(mFile, "rw");
+        mChannel = mRaf.getChannel();
+        long length = mChannel.size();
+        if(length < HEADER){
+            mSize = HEADER;
+            writeEnd();
+        }else {
+            mRaf.seek(0);
+            mSize = Math.max(HEADER, Math.min(mRaf.readLong(), length));
+        }
+        remap(Math.max(mChannel.size(), Math.min(INITIAL_CAPACITY, mMaxBytes)));
+    }
+    //grow the file and mapping geometrically. the size is bounded by the max bytes unless the record needs more.
+    private void ensureCapacity(long required) throws IOException {
+        long capacity = mMapped.capacity();
+        if(required <= capacity){
+            return;
+        }
+        remap(Math.max(required, Math.min(capacity * 2, mMaxBytes)));
+    }
+    private void remap(long capacity) throws IOException {
+        if(mChannel.size() < capacity){
+            mRaf.setLength(capacity);
+        }
+        mMapped = mChannel.map(FileChannel.MapMode.READ_ONLY, 0, capacity);
+        mRemapCount ++;
+        publish();
+    }
+    //publish the mapping for readers. the old mapping stays valid for the reader which still holds it.
+    private void publish(){
+        mSnapshot = new Snapshot(mMapped, mEpoch);
+    }
+    private void writeEnd() throws IOException {
+        mEnd.clear();
+        mEnd.putLong(mSize).flip();
+        write(mEnd, 0);
+    }
+    private void write(ByteBuffer buffer, long offset) throws IOException {
+        final int start = buffer.position();
+        while (buffer.hasRemaining()){
+            mChannel.write(buffer, offset + buffer.position() - start);
+        }
+    }
+    private void scan() throws IOException {
+        ByteBuffer buffer = mMapped.duplicate();
+        buffer.position(HEADER);
+        buffer.limit((int) mSize);
+        long valid = HEADER;
+        while (buffer.remaining() >= 8){
+            int keyLength = buffer.getInt();
+            if(keyLength < 0 || buffer.remaining() < keyLength + 4){
+                break;
+            }
+            byte[] keyBytes = new byte[keyLength];
+            buffer.get(keyBytes);
+            int valueLength = buffer.getInt();
+            String key = new String(keyBytes, UTF_8);
+            if(valueLength == TOMBSTONE){
+                mIndex.remove(key);
+            }else {
+                if(valueLength < 0 || buffer.remaining() < valueLength){
+                    break;
+                }
+                mIndex.put(key, new Entry(buffer.position(), valueLength, mEpoch));
+                buffer.position(buffer.position() + valueLength);
+            }
+            valid = buffer.position();
+        }
+        //drop the broken tail
+        if(valid < mSize){
+            mSize = valid;
+            writeEnd();
+        }
+    }
+    private void closeQuietly(){
+        mMapped = null;
+        if(mRaf != null){
+            try {
+                mRaf.close();
+            } catch (IOException e) {
+                //ignore
+            }
+            mRaf = null;
+            mChannel = null;
+        }
+    }
+
+    private static final class Entry{
+        final long offset;
+        final int length;
+        final int epoch;
+
+        Entry(long offset, int length, int epoch) {
+            this.offset = offset;
+            this.length = length;
+            this.epoch = epoch;
+        }
+    }
+
+    private static final class Snapshot{
+        final MappedByteBuffer mapped;
+        final int epoch;
+
+        Snapshot(MappedByteBuffer mapped, int epoch) {
+            this.mapped = mapped;
+            this.epoch = epoch;
+        }
+    }
+
+    /**
+     * the codec of data
+     * @param <R> the data type
+     */
+    public interface Codec<R>{
+        byte[] encode(R data);
+
+        R decode(byte[] bytes);
+    }
+}
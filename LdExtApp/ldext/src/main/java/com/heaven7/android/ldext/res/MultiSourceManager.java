@@ -1,31 +1,52 @@
 package com.heaven7.android.ldext.res;
 
+import androidx.arch.core.executor.ArchTaskExecutor;
 import androidx.lifecycle.LiveData;
 import androidx.lifecycle.MediatorLiveData;
 import androidx.lifecycle.Observer;
 
 import com.heaven7.android.ldext.model.Resource;
 import com.heaven7.android.ldext.model.Status;
+import com.heaven7.android.ldext.util.PriorityScheduler;
 import com.heaven7.java.base.util.Disposable;
 import com.heaven7.java.base.util.Scheduler;
 
-import java.lang.ref.WeakReference;
 import java.util.ArrayList;
 import java.util.List;
-import java.util.Objects;
-import java.util.concurrent.CopyOnWriteArrayList;
+import java.util.Map;
+import java.util.concurrent.ConcurrentHashMap;
+import java.util.concurrent.TimeUnit;
+import java.util.concurrent.atomic.AtomicBoolean;
 import java.util.concurrent.atomic.AtomicInteger;
 
 public class MultiSourceManager<R> {
 
     private final MediatorLiveData<Resource<R>> mResultLD = new MediatorLiveData<>();
 
-    private final List<WeakReference<Disposable>> mTasks = new CopyOnWriteArrayList<>();
+    private final CancelGroup mGroup = new CancelGroup();
     private final List<SourceDelegate<R>> mSources = new ArrayList<>();
+    //the active sources and their tokens
+    private final Map<LiveData<Resource<R>>, CancelGroup> mActiveSources = new ConcurrentHashMap<>();
     private final Scheduler mScheduler;
     private final Callback<R> mCallback;
 
     private final AtomicInteger mIndex = new AtomicInteger(0);
+    private final AtomicInteger mInFlight = new AtomicInteger(0);
+    private final AtomicBoolean mDone = new AtomicBoolean(false);
+    private volatile CancelGroup mGeneration;
+    private volatile CancelGroup mHedgeGroup;
+    private Disposable mPendingTimeout;
+    private volatile long mSeq;
+    //the last posted value and its seq. guarded by mEmitLock.
+    private final Object mEmitLock = new Object();
+    private Resource<R> mEmitted;
+    private long mEmittedSeq;
+
+    private Strategy mStrategy = Strategy.SEQUENTIAL;
+    private long mHedgeDelay;
+    private long mTimeout;
+    private ChangeDetector<R> mChangeDetector = ChangeDetector.equality();
+    private PriorityScheduler.Priority mPriority = PriorityScheduler.Priority.VISIBLE;
 
     public MultiSourceManager(Scheduler mScheduler, Callback<R> callback) {
         this.mScheduler = mScheduler;
@@ -37,78 +58,297 @@ public class MultiSourceManager<R> {
         return this;
     }
 
+    /**
+     * set the strategy to get data from sources. default is {@linkplain Strategy#SEQUENTIAL}.
+     * @param strategy the strategy
+     * @param hedgeDelay the default delay in mills before start the next source. only used for {@linkplain Strategy#HEDGED}.
+     *                   see {@linkplain SourceDelegate#getHedgeDelay()}.
+     * @return this
+     */
+    public MultiSourceManager<R> setStrategy(Strategy strategy, long hedgeDelay){
+        this.mStrategy = strategy;
+        this.mHedgeDelay = hedgeDelay;
+        return this;
+    }
+
+    /**
+     * set the change detector which decide the new resource should be emitted or not.
+     * @param detector the detector. default is {@linkplain ChangeDetector#equality()}.
+     */
+    public MultiSourceManager<R> setChangeDetector(ChangeDetector<R> detector) {
+        this.mChangeDetector = detector;
+        return this;
+    }
+
+    /**
+     * set the priority of the work. only works when the scheduler is {@linkplain PriorityScheduler}.
+     * @param priority the priority. default is {@linkplain PriorityScheduler.Priority#VISIBLE}.
+     */
+    public MultiSourceManager<R> setPriority(PriorityScheduler.Priority priority) {
+        this.mPriority = priority;
+        return this;
+    }
+
+    /**
+     * set the timeout of the whole request. when expired, the error with {@linkplain Resource#CODE_TIMEOUT} is emitted,
+     * and all sources are cancelled. the timeout of one source is set by {@linkplain SourceDelegate#getTimeout()}.
+     * @param timeout the timeout in mills. 0 means no timeout.
+     * @return this
+     */
+    public MultiSourceManager<R> setTimeout(long timeout) {
+        this.mTimeout = timeout;
+        return this;
+    }
+
+    public LiveData<Resource<R>> asLiveData() {
+        return mResultLD;
+    }
+
     public void cancel(){
-        for (WeakReference<Disposable> ref : mTasks){
-            Disposable d = ref.get();
-            if(d != null){
-                d.dispose();
-            }
+        //the hedge group is the child of generation.
+        CancelGroup generation = mGeneration;
+        if(generation != null){
+            mGeneration = null;
+            generation.cancel();
         }
+        mHedgeGroup = null;
+        mPendingTimeout = null;
+        removeActiveSources();
         mIndex.set(0);
-    }
-    protected void addTask(WeakReference<Disposable> ref){
-        mTasks.add(ref);
-    }
-    protected void removeTask(WeakReference<Disposable> ref){
-        mTasks.remove(ref);
+        mInFlight.set(0);
+        mDone.set(false);
     }
     public void start(){
         cancel();
+        final CancelGroup generation = mGroup.newChild();
+        mGeneration = generation;
+        final long seq = ++mSeq;
 
         Resource<R> resource = Resource.loading(null);
-        setValue(resource);
+        setValue(resource, seq);
 
-        next();
+        if(mTimeout > 0){
+            generation.setTimeout(mTimeout);
+            mPendingTimeout = generation.scheduleDelayOnMain(newWorker(), new Runnable() {
+                @Override
+                public void run() {
+                    //a source may win while the timeout hops to main thread.
+                    if(finish()){
+                        setValue(Resource.<R>timeout(null), seq);
+                        generation.cancel();
+                    }
+                }
+            }, mTimeout, TimeUnit.MILLISECONDS);
+        }
+
+        if(mStrategy == Strategy.PARALLEL){
+            while (mIndex.get() < mSources.size()){
+                next(seq);
+            }
+        }else {
+            next(seq);
+        }
     }
-    private void next(){
+    //main thread
+    private void next(final long seq){
+        final CancelGroup generation = mGeneration;
+        //cancelled, timeout or superseded
+        if(generation == null || generation.isCancelled() || seq != mSeq){
+            return;
+        }
         final SourceDelegate<R> sd = peekSourceDelegate();
-        if(sd != null){
-            if(sd.shouldAsync()){
-                Disposable d = mScheduler.newWorker().schedule(new Runnable() {
-                    @Override
-                    public void run() {
-                        getDataFromSource( sd);
-                    }
-                });
-                addTask(new WeakReference<>(d));
-            }else {
-                getDataFromSource(sd);
+        if(sd == null){
+            //no source at all. the failure of the last source is emitted by onSourceFailed.
+            if(mInFlight.get() <= 0 && finish()){
+                setValue(Resource.<R>error((R) null), seq);
             }
+            return;
+        }
+        mInFlight.incrementAndGet();
+        if(mStrategy == Strategy.HEDGED){
+            scheduleHedge(generation, sd, seq);
+        }
+        if(sd.shouldAsync()){
+            //get the source on worker. the source is attached on main thread.
+            generation.schedule(newWorker(), new Runnable() {
+                @Override
+                public void run() {
+                    final CancelGroup token = newSourceToken(sd, seq);
+                    if(token == null){
+                        return;
+                    }
+                    final LiveData<Resource<R>> ld = sd.getSource(token);
+                    ArchTaskExecutor.getInstance().postToMainThread(new Runnable() {
+                        @Override
+                        public void run() {
+                            attachSource(sd, ld, token, seq);
+                        }
+                    });
+                }
+            });
         }else {
-            throw new IllegalStateException("shouldn't reach here");
+            CancelGroup token = newSourceToken(sd, seq);
+            if(token != null){
+                attachSource(sd, sd.getSource(token), token, seq);
+            }
+        }
+    }
+    private void scheduleHedge(CancelGroup generation, SourceDelegate<R> sd, final long seq){
+        cancelHedge();
+        if(mIndex.get() >= mSources.size()){
+            return;
+        }
+        long delay = sd.getHedgeDelay() >= 0 ? sd.getHedgeDelay() : mHedgeDelay;
+        final CancelGroup group = generation.newChild();
+        mHedgeGroup = group;
+        group.scheduleDelayOnMain(newWorker(), new Runnable() {
+            @Override
+            public void run() {
+                group.cancel();
+                if(!mDone.get() && hasNext()){
+                    next(seq);
+                }
+            }
+        }, delay, TimeUnit.MILLISECONDS);
+    }
+    private void cancelHedge(){
+        CancelGroup group = mHedgeGroup;
+        if(group != null){
+            mHedgeGroup = null;
+            group.cancel();
         }
     }
 
-    private void getDataFromSource(final SourceDelegate<R> sd) {
-        final LiveData<Resource<R>> ld = sd.getSource();
+    //the token of source. which inherit the deadline of the whole request. return null if the request is superseded.
+    private CancelGroup newSourceToken(SourceDelegate<R> sd, long seq){
+        final CancelGroup generation = mGeneration;
+        if(generation == null || seq != mSeq){
+            return null;
+        }
+        final CancelGroup token = generation.newChild();
+        final long timeout = sd.getTimeout();
+        if(timeout > 0){
+            token.setTimeout(timeout);
+        }
+        return token;
+    }
+    //main thread
+    private void attachSource(final SourceDelegate<R> sd, final LiveData<Resource<R>> ld, final CancelGroup token, final long seq) {
+        //finished or superseded while the async source is created.
+        if(token.isCancelled() || mDone.get() || seq != mSeq){
+            token.cancel();
+            if(ld instanceof Disposable){
+                ((Disposable) ld).dispose();
+            }
+            return;
+        }
+        //the source is settled by the result or the timeout. which is first.
+        final AtomicBoolean settled = new AtomicBoolean(false);
+        mActiveSources.put(ld, token);
+        if(sd.getTimeout() > 0){
+            token.scheduleDelayOnMain(newWorker(), new Runnable() {
+                @Override
+                public void run() {
+                    if(!settled.compareAndSet(false, true)){
+                        return;
+                    }
+                    removeActiveSource(ld);
+                    token.cancel();
+                    if(!mDone.get() && seq == mSeq){
+                        //move on to the next source.
+                        onSourceFailed(Resource.<R>timeout(null), seq);
+                    }
+                }
+            }, token.getRemainingTime(), TimeUnit.MILLISECONDS);
+        }
         mResultLD.addSource(ld, new Observer<Resource<R>>() {
             @Override
             public void onChanged(Resource<R> res) {
-                mResultLD.removeSource(ld);
+                if(res.status == Status.LOADING){
+                    return;
+                }
+                removeActiveSource(ld);
+                //the source is done. its listeners don't need the later cancel.
+                token.release();
+                if(!settled.compareAndSet(false, true)){
+                    return;
+                }
+                //a faster source already wins. or superseded by the newer start.
+                if(mDone.get() || seq != mSeq){
+                    return;
+                }
                 if(res.status == Status.SUCCESS){
                     if (mCallback.isResourceValid(res.data)) {
+                        if(!finish()){
+                            return;
+                        }
                         mCallback.saveData(res.data, sd);
                         mResultLD.addSource(ld, new Observer<Resource<R>>() {
                             @Override
                             public void onChanged(Resource<R> res) {
                                 mResultLD.removeSource(ld);
                                 mIndex.set(0);
-                                setValue(Resource.success(res.data));
+                                setValue(Resource.success(res.data), seq);
                             }
                         });
                     } else {
-                        next();
+                        onSourceFailed(Resource.<R>error(res.data), seq);
                     }
                 }else if(res.status == Status.ERROR){
                     if(mCallback.shouldIgnoreError(res.code, sd)){
-                        next();
-                    }else {
-                        setValue(res);
+                        onSourceFailed(res, seq);
+                    }else if(finish()){
+                        setValue(res, seq);
                     }
                 }
             }
         });
     }
+    private void onSourceFailed(Resource<R> res, long seq){
+        int inFlight = mInFlight.decrementAndGet();
+        if(hasNext()){
+            //the sequential moves on. the others don't wait the hedge delay.
+            next(seq);
+        }else if(inFlight <= 0 && finish()){
+            //all sources are failed.
+            setValue(res, seq);
+        }
+    }
+    //return true if this is the first finish. the other sources are disposed.
+    private boolean finish(){
+        if(!mDone.compareAndSet(false, true)){
+            return false;
+        }
+        if(mPendingTimeout != null){
+            mPendingTimeout.dispose();
+            mPendingTimeout = null;
+        }
+        cancelHedge();
+        removeActiveSources();
+        return true;
+    }
+    //the losing sources are cancelled, and disposed if they are disposable.
+    private void removeActiveSources(){
+        for (Map.Entry<LiveData<Resource<R>>, CancelGroup> e : mActiveSources.entrySet()){
+            LiveData<Resource<R>> ld = e.getKey();
+            mResultLD.removeSource(ld);
+            e.getValue().cancel();
+            if(ld instanceof Disposable){
+                ((Disposable) ld).dispose();
+            }
+        }
+        mActiveSources.clear();
+    }
+    private void removeActiveSource(LiveData<Resource<R>> ld){
+        mResultLD.removeSource(ld);
+        mActiveSources.remove(ld);
+    }
+    private Scheduler.Worker newWorker(){
+        return PriorityScheduler.newWorker(mScheduler, mPriority);
+    }
+    private boolean hasNext(){
+        return mIndex.get() < mSources.size();
+    }
 
     private SourceDelegate<R> peekSourceDelegate() {
         int index = mIndex.getAndIncrement();
@@ -117,16 +357,67 @@ public class MultiSourceManager<R> {
         }
         return null;
     }
-    private void setValue(final Resource<R> newValue) {
-        if (!Objects.equals(mResultLD.getValue(), newValue)) {
-            mResultLD.postValue(newValue);
+    private void setValue(final Resource<R> newValue, long seq) {
+        //drop the emission of the superseded generation.
+        if(seq != mSeq){
+            return;
+        }
+        //dedup only inside one generation. the same value of the newer generation is still emitted.
+        //the shared data-less states are not stamped, so the seq of posted value is kept here.
+        synchronized (mEmitLock){
+            Resource<R> old = mEmitted;
+            if (old == null || mEmittedSeq != seq || !mChangeDetector.isSame(old, newValue)) {
+                mEmitted = newValue;
+                mEmittedSeq = seq;
+                mResultLD.postValue(newValue.withSeq(seq));
+            }
         }
     }
+
+    /**
+     * the strategy to get data from multi sources
+     */
+    public enum Strategy{
+        /** the sources run one by one. the next source starts only after the previous failed. */
+        SEQUENTIAL,
+        /** if the source hasn't produced a valid result in the hedge delay, the next source start alongside it. */
+        HEDGED,
+        /** all sources start at the same time. */
+        PARALLEL
+    }
     public abstract static class SourceDelegate<R>{
         public boolean shouldAsync(){
             return false;
         }
+
+        /**
+         * get the delay in mills before the next source is started alongside this source. only used for hedged strategy.
+         * @return the delay. negative means use the default delay of manager.
+         */
+        public long getHedgeDelay(){
+            return -1;
+        }
+
+        /**
+         * get the timeout of this source. when expired, the source is cancelled and the manager move on to the next source.
+         * the timeout never exceed the remaining time of the whole request (see {@linkplain MultiSourceManager#setTimeout(long)}).
+         * @return the timeout in mills. 0 or negative means no timeout.
+         */
+        public long getTimeout(){
+            return -1;
+        }
         public abstract LiveData<Resource<R>> getSource();
+
+        /**
+         * get the source with the cancellation token. which is cancelled when the manager cancel or restart.
+         * if the source is {@linkplain Disposable}, it is also disposed when another source wins.
+         * default is {@linkplain #getSource()}.
+         * @param token the cancellation token
+         * @return the source
+         */
+        public LiveData<Resource<R>> getSource(CancellationToken token){
+            return getSource();
+        }
     }
     public abstract static class Callback<R>{
 
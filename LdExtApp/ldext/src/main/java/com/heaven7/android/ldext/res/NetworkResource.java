@@ -6,69 +6,424 @@ import androidx.lifecycle.Observer;
 
 import com.heaven7.android.ldext.model.Resource;
 import com.heaven7.android.ldext.model.Status;
+import com.heaven7.android.ldext.util.PriorityScheduler;
 import com.heaven7.java.base.util.Disposable;
 import com.heaven7.java.base.util.Scheduler;
 
-import java.util.Objects;
+import java.util.concurrent.TimeUnit;
 
 public abstract class NetworkResource<R> {
 
     private final MediatorLiveData<Resource<R>> mResultLD = new MediatorLiveData<>();
     private final Scheduler mScheduler;
-    private volatile Disposable mTask1;
+    private final CancelGroup mGroup = new CancelGroup();
+    private volatile CancelGroup mGeneration;
+    private SingleFlight mSingleFlight;
+    private SingleFlight.Flight<R> mFlight;
+    private ResourceCache mCache;
+    private long mCacheTtl;
+    private RetryPolicy mRetryPolicy;
+    private int mAttempt;
+    private volatile long mSeq;
+    private WriteBehindQueue mWriteBehind;
+    private DiskResourceCache mDiskCache;
+    private DiskResourceCache.Codec<R> mCodec;
+    private ChangeDetector<R> mChangeDetector = ChangeDetector.equality();
+    private PriorityScheduler.Priority mPriority = PriorityScheduler.Priority.VISIBLE;
+    private long mTimeout;
+    //the terminal state. guarded by mLock.
+    private final Object mLock = new Object();
+    private long mCompletedSeq;
+    private Disposable mPendingTimeout;
+    //the last posted value and its seq. guarded by mEmitLock.
+    private final Object mEmitLock = new Object();
+    private Resource<R> mEmitted;
+    private long mEmittedSeq;
+
+    //the in-flight state. the observer and tasks are reused by every start.
+    private volatile LiveData<Resource<R>> mNetwork;
+    private CancelGroup mNetworkToken;
+    private volatile R mSaveData;
+    private volatile long mSaveSeq;
+
+    private final Observer<Resource<R>> mNetworkObserver = new Observer<Resource<R>>() {
+        @Override
+        public void onChanged(Resource<R> response) {
+            onNetworkResult(response);
+        }
+    };
+    private final Runnable mSaveTask = new Runnable() {
+        @Override
+        public void run() {
+            final R data = mSaveData;
+            final long seq = mSaveSeq;
+            mSaveData = null;
+            saveNetworkData(data);
+            putCache(data);
+            if(isActive()){
+                setValue(Resource.success(data), seq);
+            }
+        }
+    };
+    private final Runnable mRetryTask = new Runnable() {
+        @Override
+        public void run() {
+            fetch();
+        }
+    };
+    private final Runnable mTimeoutTask = new Runnable() {
+        @Override
+        public void run() {
+            onTimeout();
+        }
+    };
+    private final SingleFlight.Call<R> mFlightCall = new SingleFlight.Call<R>() {
+        @Override
+        public LiveData<Resource<R>> createNetwork(CancellationToken token) {
+            return NetworkResource.this.createNetwork(token);
+        }
+        @Override
+        public void saveNetworkData(R data) {
+            NetworkResource.this.saveNetworkData(data);
+        }
+    };
 
     public NetworkResource(Scheduler mScheduler) {
         this.mScheduler = mScheduler;
     }
 
+    /**
+     * set the single-flight registry. the concurrent requests which have the same request-key
+     * (see {@linkplain #getRequestKey()}) will share one network call and one save.
+     * @param singleFlight the single flight. null to disable.
+     */
+    public void setSingleFlight(SingleFlight singleFlight) {
+        this.mSingleFlight = singleFlight;
+    }
+
+    /**
+     * set the in-memory cache. when start, a fresh hit emit success directly without network.
+     * a stale hit emit loading with the cached data and revalidate by network.
+     * the cache key is the request-key (see {@linkplain #getRequestKey()}).
+     * @param cache the cache. null to disable.
+     * @param ttl the time-to-live in mills of the data which is put by this resource.
+     */
+    public void setCache(ResourceCache cache, long ttl) {
+        this.mCache = cache;
+        this.mCacheTtl = ttl;
+    }
+
+    /**
+     * set the disk cache. which is the tier under the in-memory cache. when start and the in-memory cache missed,
+     * the persisted data is emitted as loading and revalidate by network.
+     * the cache key is the request-key (see {@linkplain #getRequestKey()}).
+     * @param cache the disk cache. null to disable.
+     * @param codec the codec of data
+     */
+    public void setDiskCache(DiskResourceCache cache, DiskResourceCache.Codec<R> codec) {
+        this.mDiskCache = cache;
+        this.mCodec = codec;
+    }
+
+    /**
+     * set the retry policy. when the network failed and the policy allows, the fetch is retried after a backoff delay.
+     * the intermediate loading carries the attempt number (see {@linkplain Resource#attempt}).
+     * @param policy the retry policy. null to disable.
+     */
+    public void setRetryPolicy(RetryPolicy policy) {
+        this.mRetryPolicy = policy;
+    }
+
+    /**
+     * set the write-behind queue. the network data is saved in batch with the other resources,
+     * and the success is emitted after the batch commits.
+     * @param queue the queue. null to save directly.
+     */
+    public void setWriteBehindQueue(WriteBehindQueue queue) {
+        this.mWriteBehind = queue;
+    }
+
+    /**
+     * set the change detector which decide the new resource should be emitted or not.
+     * @param detector the detector. default is {@linkplain ChangeDetector#equality()}.
+     */
+    public void setChangeDetector(ChangeDetector<R> detector) {
+        this.mChangeDetector = detector;
+    }
+
+    /**
+     * set the priority of the work. only works when the scheduler is {@linkplain PriorityScheduler}.
+     * @param priority the priority. default is {@linkplain PriorityScheduler.Priority#VISIBLE}.
+     */
+    public void setPriority(PriorityScheduler.Priority priority) {
+        this.mPriority = priority;
+    }
+
+    /**
+     * set the timeout of every request. when expired, the error with {@linkplain Resource#CODE_TIMEOUT} is emitted,
+     * and the in-flight work is cancelled. the timeout includes the retries.
+     * the remaining time is exposed to the source by {@linkplain CancellationToken#getRemainingTime()}.
+     * @param timeout the timeout in mills. 0 means no timeout.
+     */
+    public void setTimeout(long timeout) {
+        this.mTimeout = timeout;
+    }
+
     public void cancel(){
-        if(mTask1 != null){
-            mTask1.dispose();
-            mTask1 = null;
+        CancelGroup generation = mGeneration;
+        if(generation != null){
+            mGeneration = null;
+            generation.cancel();
         }
+        detachNetwork();
     }
 
     public void start(){
         cancel();
-        //loading
-        Resource<R> resource = Resource.loading(null);
-        setValue(resource);
-
-        fetchFromNetwork();
-    }
-    private void fetchFromNetwork() {
-        final LiveData<Resource<R>> apiResponse = createNetwork();
-        mResultLD.addSource(apiResponse, new Observer<Resource<R>>() {
-            @Override
-            public void onChanged(final Resource<R> response) {
-                mResultLD.removeSource(apiResponse);
-                if (response.status == Status.SUCCESS) {
-                    mTask1 = mScheduler.newWorker().schedule(new Runnable() {
-                        @Override
-                        public void run() {
-                            mTask1 = null;
-                            saveNetworkData(response.data);
-                            mResultLD.postValue(Resource.success(response.data));
-                        }
-                    });
-                } else if (response.status == Status.ERROR) {
-                    mResultLD.postValue(response);
+        final CancelGroup generation = mGroup.newChild();
+        mGeneration = generation;
+        mAttempt = 1;
+        final long seq = ++mSeq;
+        final Object key = getRequestKey();
+        ResourceCache.Entry<R> entry = mCache != null && key != null ? mCache.<R>get(key) : null;
+        if(entry != null && entry.isFresh()){
+            setValue(Resource.success(entry.data), seq);
+            return;
+        }
+        R stale = entry != null ? entry.data : null;
+        if(stale == null && mDiskCache != null && key != null){
+            stale = mDiskCache.get(key, mCodec);
+        }
+        //loading. stale data is emitted while revalidate.
+        setValue(Resource.loading(stale), seq);
+
+        if(mTimeout > 0){
+            generation.setTimeout(mTimeout);
+            Disposable task = generation.scheduleDelayOnMain(newWorker(), mTimeoutTask, mTimeout, TimeUnit.MILLISECONDS);
+            synchronized (mLock){
+                mPendingTimeout = task;
+            }
+        }
+        fetch();
+    }
+    private void fetch(){
+        Object key;
+        if(mSingleFlight != null && (key = getRequestKey()) != null){
+            SingleFlight.Flight<R> flight = mSingleFlight.join(key, mScheduler, mFlightCall);
+            mFlight = flight;
+            mResultLD.addSource(flight.asLiveData(), mNetworkObserver);
+        }else {
+            CancelGroup generation = mGeneration;
+            if(generation == null){
+                return;
+            }
+            //one token per attempt. which is released when the attempt is done.
+            CancelGroup token = generation.newChild();
+            mNetworkToken = token;
+            LiveData<Resource<R>> network = createNetwork(token);
+            mNetwork = network;
+            mResultLD.addSource(network, mNetworkObserver);
+        }
+    }
+    //the source is detached when cancel. so the observer only see the current generation.
+    private void onNetworkResult(Resource<R> response){
+        //timeout
+        if(!isActive()){
+            detachNetwork();
+            return;
+        }
+        if(response.status == Status.LOADING){
+            return;
+        }
+        //the flight already saved the data.
+        final boolean shared = mFlight != null;
+        detachNetwork();
+        final long seq = mSeq;
+        if (response.status == Status.SUCCESS) {
+            if(shared){
+                putCache(response.data);
+                setValue(response, seq);
+            }else {
+                save(response.data, seq);
+            }
+        } else if(!scheduleRetry(response, seq)) {
+            setValue(response, seq);
+        }
+    }
+    private void save(final R data, final long seq){
+        final CancelGroup generation = mGeneration;
+        if(generation == null){
+            return;
+        }
+        if(mWriteBehind != null){
+            mWriteBehind.enqueue(new WriteBehindQueue.PendingWrite<R>(data) {
+                @Override
+                protected void save(R data) {
+                    saveNetworkData(data);
+                }
+                @Override
+                protected void onCommitted() {
+                    if(!generation.isCancelled()){
+                        putCache(data);
+                        setValue(Resource.success(data), seq);
+                    }
                 }
+                @Override
+                protected void onFailed(RuntimeException e) {
+                    if(!generation.isCancelled()){
+                        setValue(Resource.error(data), seq);
+                    }
+                }
+            });
+            return;
+        }
+        mSaveData = data;
+        mSaveSeq = seq;
+        generation.schedule(newWorker(), mSaveTask);
+    }
+    //detach the source. and stop the in-flight io if the source is disposable.
+    private void detachNetwork(){
+        if(mNetworkToken != null){
+            mNetworkToken.release();
+            mNetworkToken = null;
+        }
+        LiveData<Resource<R>> network = mNetwork;
+        if(network != null){
+            mNetwork = null;
+            mResultLD.removeSource(network);
+            if(network instanceof Disposable){
+                ((Disposable) network).dispose();
             }
-        });
+        }
+        if(mFlight != null){
+            mResultLD.removeSource(mFlight.asLiveData());
+            mFlight.release();
+            mFlight = null;
+        }
     }
 
     public LiveData<Resource<R>> asLiveData() {
         return mResultLD;
     }
-    private void setValue(final Resource<R> newValue) {
-        if (!Objects.equals(mResultLD.getValue(), newValue)) {
-            mResultLD.postValue(newValue);
+    //main thread. cancel the work but keep the generation. so the late result is dropped.
+    private void onTimeout(){
+        final CancelGroup generation = mGeneration;
+        if(generation == null){
+            return;
+        }
+        final long seq = mSeq;
+        Resource<R> last = mResultLD.getValue();
+        //the request may complete while the timeout hops to main thread.
+        if(setValue(Resource.timeout(last != null ? last.data : null), seq)){
+            generation.cancel();
+            detachNetwork();
         }
     }
+    //return true if this is the first terminal state of the generation. the timeout is disposed.
+    private boolean complete(long seq){
+        synchronized (mLock){
+            if(seq <= mCompletedSeq){
+                return false;
+            }
+            mCompletedSeq = seq;
+            //the timeout of the superseded generation is cancelled with it.
+            if(seq == mSeq && mPendingTimeout != null){
+                mPendingTimeout.dispose();
+                mPendingTimeout = null;
+            }
+            return true;
+        }
+    }
+    private boolean isActive(){
+        CancelGroup generation = mGeneration;
+        return generation != null && !generation.isCancelled();
+    }
+    //return true if the retry is scheduled.
+    private boolean scheduleRetry(Resource<?> response, long seq){
+        final CancelGroup generation = mGeneration;
+        if(seq != mSeq || mRetryPolicy == null || generation == null || !mRetryPolicy.shouldRetry(mAttempt, response.code)){
+            return false;
+        }
+        long delay = mRetryPolicy.getDelay(mAttempt);
+        //the retry can't finish before the deadline.
+        long remaining = generation.getRemainingTime();
+        if(remaining >= 0 && delay >= remaining){
+            return false;
+        }
+        mAttempt ++;
+        Resource<R> last = mResultLD.getValue();
+        setValue(Resource.loading(last != null ? last.data : null, mAttempt), seq);
+        generation.scheduleDelayOnMain(newWorker(), mRetryTask, delay, TimeUnit.MILLISECONDS);
+        return true;
+    }
+    private Scheduler.Worker newWorker(){
+        return PriorityScheduler.newWorker(mScheduler, mPriority);
+    }
+    private void putCache(final R data){
+        final Object key = getRequestKey();
+        if(key == null){
+            return;
+        }
+        if(mCache != null){
+            mCache.put(key, data, mCacheTtl);
+        }
+        final DiskResourceCache diskCache = mDiskCache;
+        if(diskCache != null){
+            final DiskResourceCache.Codec<R> codec = mCodec;
+            PriorityScheduler.newWorker(mScheduler, PriorityScheduler.Priority.BACKGROUND).schedule(new Runnable() {
+                @Override
+                public void run() {
+                    diskCache.put(key, data, codec);
+                }
+            });
+        }
+    }
+    //return false if the value is dropped for superseded or completed.
+    private boolean setValue(final Resource<R> newValue, long seq) {
+        //drop the emission of the superseded generation.
+        if(seq != mSeq){
+            return false;
+        }
+        //only the first terminal state is emitted. e.g: the success which race with the timeout.
+        if(newValue.status != Status.LOADING && !complete(seq)){
+            return false;
+        }
+        //dedup only inside one generation. the same value of the newer generation is still emitted.
+        //the shared data-less states are not stamped, so the seq of posted value is kept here.
+        synchronized (mEmitLock){
+            Resource<R> old = mEmitted;
+            if (old == null || mEmittedSeq != seq || !mChangeDetector.isSame(old, newValue)) {
+                mEmitted = newValue;
+                mEmittedSeq = seq;
+                mResultLD.postValue(newValue.withSeq(seq));
+            }
+        }
+        return true;
+    }
+
+    /**
+     * get the request key which identify the logical request. default is null.
+     * the same key means the same request. which is used to coalesce the concurrent requests and as the cache key.
+     * @return the request key.
+     */
+    protected Object getRequestKey(){
+        return null;
+    }
 
     protected abstract LiveData<Resource<R>> createNetwork();
 
+    /**
+     * create the network source with the cancellation token. which is cancelled when {@linkplain #cancel()}
+     * or the next {@linkplain #start()}. the source should abort the http call then.
+     * if the returned live data is {@linkplain Disposable}, it is also disposed when detached.
+     * default is {@linkplain #createNetwork()}.
+     * @param token the cancellation token
+     * @return the network live data
+     */
+    protected LiveData<Resource<R>> createNetwork(CancellationToken token){
+        return createNetwork();
+    }
+
     protected void saveNetworkData(R data){
 
     }
@@ -0,0 +1,253 @@
+package com.heaven7.android.ldext.res;
+
+import androidx.annotation.MainThread;
+import androidx.lifecycle.LiveData;
+import androidx.lifecycle.MediatorLiveData;
+import androidx.lifecycle.Observer;
+
+import com.heaven7.android.ldext.model.Resource;
+import com.heaven7.android.ldext.model.Status;
+
+import java.util.ArrayDeque;
+import java.util.Collections;
+import java.util.List;
+
+/**
+ * the paged network resource. which load page by page with the page key, and emit the append delta
+ * (see {@linkplain PageDelta}) with the range of items in memory. the next page is prefetched when the accessed index
+ * is in the prefetch distance of the end. and the far pages are dropped when the page count exceed the max.
+ * <p>an observer only sees the latest value when it becomes active, so the delta is only valid for the observer which
+ * saw the previous one. the late or re-activated observer should rebuild the range of delta from the pages in memory
+ * (see {@linkplain #getPageCount()} and {@linkplain #getPage(int)}). the loaded pages are never copied.</p>
+ * <p>all methods should be called on main thread.</p>
+ * @param <K> the page key type
+ * @param <T> the item type
+ * @author heaven7
+ */
+public abstract class PagedNetworkResource<K, T> {
+
+    private final MediatorLiveData<Resource<PageDelta<T>>> mResultLD = new MediatorLiveData<>();
+    private final ArrayDeque<List<T>> mPages = new ArrayDeque<>();
+
+    private int mPrefetchDistance = 10;
+    private int mMaxPages = Integer.MAX_VALUE;
+
+    /** the count of items which are dropped from the front */
+    private int mDroppedCount;
+    /** the count of items in memory */
+    private int mLoadedCount;
+    private K mNextKey;
+    private boolean mEnd;
+    private LiveData<Resource<Page<K, T>>> mLoadingPage;
+
+    /**
+     * set the prefetch distance. when the accessed index is in this distance of the end, the next page is loaded.
+     * @param distance the distance in items
+     */
+    public void setPrefetchDistance(int distance) {
+        this.mPrefetchDistance = distance;
+    }
+
+    /**
+     * set the max pages kept in memory. the pages of the front are dropped when exceed.
+     * @param maxPages the max page count
+     */
+    public void setMaxPages(int maxPages) {
+        if(maxPages < 2){
+            throw new IllegalArgumentException("maxPages must >= 2");
+        }
+        this.mMaxPages = maxPages;
+    }
+
+    @MainThread
+    public void cancel(){
+        if(mLoadingPage != null){
+            mResultLD.removeSource(mLoadingPage);
+            mLoadingPage = null;
+        }
+    }
+
+    /**
+     * start to load from the initial page. the previous pages are cleared.
+     */
+    @MainThread
+    public void start(){
+        cancel();
+        mPages.clear();
+        mDroppedCount = 0;
+        mLoadedCount = 0;
+        mEnd = false;
+        mResultLD.setValue(Resource.<PageDelta<T>>loading(null));
+        loadPage(getInitialKey(), true);
+    }
+
+    /**
+     * called when the item of target index is accessed. this may trigger the prefetch of the next page.
+     * @param index the absolute index of item. which include the dropped items.
+     */
+    @MainThread
+    public void onItemAccessed(int index){
+        if(mLoadingPage != null || mEnd || mNextKey == null){
+            return;
+        }
+        if(index >= mDroppedCount + mLoadedCount - mPrefetchDistance){
+            loadPage(mNextKey, false);
+        }
+    }
+
+    /**
+     * get the item of target index and signal the access (see {@linkplain #onItemAccessed(int)}).
+     * @param index the absolute index of item. which include the dropped items.
+     * @return the item. or null if the item is dropped or not loaded.
+     */
+    @MainThread
+    public T getItem(int index){
+        onItemAccessed(index);
+        int pos = index - mDroppedCount;
+        if(pos < 0 || pos >= mLoadedCount){
+            return null;
+        }
+        for (List<T> page : mPages){
+            if(pos < page.size()){
+                return page.get(pos);
+            }
+            pos -= page.size();
+        }
+        return null;
+    }
+    /**
+     * get the count of pages in memory.
+     * @return the page count
+     */
+    @MainThread
+    public int getPageCount(){
+        return mPages.size();
+    }
+    /**
+     * get the read-only items of the page in memory. the first item of the first page is at
+     * {@linkplain PageDelta#startIndex}.
+     * @param pageIndex the index of page in memory. 0 is the first page which is not dropped.
+     * @return the items of page
+     */
+    @MainThread
+    public List<T> getPage(int pageIndex){
+        if(pageIndex < 0 || pageIndex >= mPages.size()){
+            throw new IndexOutOfBoundsException("pageIndex = " + pageIndex + ", pageCount = " + mPages.size());
+        }
+        for (List<T> page : mPages){
+            if(pageIndex-- == 0){
+                return page;
+            }
+        }
+        throw new IllegalStateException("shouldn't reach here");
+    }
+    public boolean isLoading(){
+        return mLoadingPage != null;
+    }
+    public boolean isEnd(){
+        return mEnd;
+    }
+
+    public LiveData<Resource<PageDelta<T>>> asLiveData() {
+        return mResultLD;
+    }
+
+    private void loadPage(K key, final boolean refresh){
+        final LiveData<Resource<Page<K, T>>> source = createPage(key);
+        mLoadingPage = source;
+        mResultLD.addSource(source, new Observer<Resource<Page<K, T>>>() {
+            @Override
+            public void onChanged(Resource<Page<K, T>> res) {
+                if(res.status == Status.LOADING){
+                    return;
+                }
+                mResultLD.removeSource(source);
+                mLoadingPage = null;
+                if(res.status == Status.SUCCESS && res.data != null){
+                    onPageLoaded(res.data, refresh);
+                }else {
+                    //the loaded pages are still valid. emit their range with the empty delta.
+                    PageDelta<T> delta = new PageDelta<>(false, mDroppedCount + mLoadedCount, Collections.<T>emptyList(), 0,
+                            mDroppedCount, mLoadedCount, mEnd);
+                    mResultLD.setValue(new Resource<>(Status.ERROR, delta, res.code, res.message));
+                }
+            }
+        });
+    }
+    private void onPageLoaded(Page<K, T> page, boolean refresh){
+        //the page is kept and emitted as the same read-only view.
+        List<T> items = page.items != null ? Collections.unmodifiableList(page.items) : Collections.<T>emptyList();
+        int offset = mDroppedCount + mLoadedCount;
+        mPages.addLast(items);
+        mLoadedCount += items.size();
+        mNextKey = page.nextKey;
+        mEnd = page.nextKey == null;
+
+        int dropped = 0;
+        while (mPages.size() > mMaxPages){
+            List<T> first = mPages.removeFirst();
+            dropped += first.size();
+        }
+        mDroppedCount += dropped;
+        mLoadedCount -= dropped;
+        //the active observers see every delta. the others rebuild from the pages.
+        mResultLD.setValue(Resource.success(new PageDelta<>(refresh, offset, items, dropped,
+                mDroppedCount, mLoadedCount, mEnd)));
+    }
+
+    protected abstract K getInitialKey();
+
+    /**
+     * create the page source
+     * @param key the page key
+     * @return the page live data
+     */
+    protected abstract LiveData<Resource<Page<K, T>>> createPage(K key);
+
+    /**
+     * the page
+     * @param <K> the page key type
+     * @param <T> the item type
+     */
+    public static final class Page<K, T>{
+        public final List<T> items;
+        /** the key of next page. null means no more page. */
+        public final K nextKey;
+
+        public Page(List<T> items, K nextKey) {
+            this.items = items;
+            this.nextKey = nextKey;
+        }
+    }
+
+    /**
+     * the append delta of one page. which also carries the range of items in memory.
+     * @param <T> the item type
+     */
+    public static final class PageDelta<T>{
+        /** true means this is the first page. the previous items should be cleared. */
+        public final boolean refresh;
+        /** the absolute index of the first appended item */
+        public final int offset;
+        /** the appended items. which is read-only. */
+        public final List<T> appended;
+        /** the count of items which are dropped from the front by this delta */
+        public final int droppedCount;
+        /** the absolute index of the first item in memory */
+        public final int startIndex;
+        /** the count of items in memory */
+        public final int loadedCount;
+        /** true means there is no more page */
+        public final boolean end;
+
+        PageDelta(boolean refresh, int offset, List<T> appended, int droppedCount, int startIndex, int loadedCount, boolean end) {
+            this.refresh = refresh;
+            this.offset = offset;
+            this.appended = appended;
+            this.droppedCount = droppedCount;
+            this.startIndex = startIndex;
+            this.loadedCount = loadedCount;
+            this.end = end;
+        }
+    }
+}
@@ -0,0 +1,119 @@
+package com.heaven7.android.ldext.res;
+
+import android.content.SharedPreferences;
+
+import java.util.concurrent.ConcurrentHashMap;
+
+/**
+ * the keyed rate limiter of refetch. which records the last fetch time of every request key, and allows the next fetch
+ * only after the window elapsed. the failed fetch should be {@linkplain #reset(Object) reset}, so the next visit refetch.
+ * <p>the timestamps can be persisted into the shared preferences. so the cold start doesn't refetch everything at once.
+ * the persisted time is the wall clock. the persisted keys are prefixed (see {@linkplain #KEY_PREFIX}), so the
+ * preferences can be shared with the other data.</p>
+ * <p>this class is thread-safe.</p>
+ * @author heaven7
+ */
+public final class RateLimiter {
+
+    /** the prefix of the persisted keys */
+    public static final String KEY_PREFIX = "ldext.rate_limiter.";
+    private static final Long ABSENT = -1L;
+
+    private final ConcurrentHashMap<String, Long> mTimestamps = new ConcurrentHashMap<>();
+    private final long mWindow;
+    private final SharedPreferences mPrefs;
+
+    /**
+     * create the in-memory rate limiter
+     * @param window the freshness window in mills
+     */
+    public RateLimiter(long window) {
+        this(window, null);
+    }
+    /**
+     * create the rate limiter
+     * @param window the freshness window in mills
+     * @param prefs the shared preferences to persist the timestamps. null means in-memory only.
+     */
+    public RateLimiter(long window, SharedPreferences prefs) {
+        this.mWindow = window;
+        this.mPrefs = prefs;
+    }
+
+    /**
+     * indicate the request of target key should fetch or not. if true, the fetch time is recorded.
+     * only one of the concurrent callers get true in one window.
+     * @param key the request key
+     * @return true if should fetch
+     */
+    public boolean shouldFetch(Object key){
+        final String k = String.valueOf(key);
+        final long now = System.currentTimeMillis();
+        for (;;){
+            Long last = getTimestamp(k);
+            //the clock may be changed. treat the future time as expired.
+            if(last >= 0 && last <= now && now - last < mWindow){
+                return false;
+            }
+            if(mTimestamps.replace(k, last, now)){
+                persist(k, now);
+                return true;
+            }
+        }
+    }
+
+    /**
+     * record the fetch of target key without check.
+     * @param key the request key
+     */
+    public void markFetched(Object key){
+        final String k = String.valueOf(key);
+        final long now = System.currentTimeMillis();
+        mTimestamps.put(k, now);
+        persist(k, now);
+    }
+
+    /**
+     * reset the target key. so the next {@linkplain #shouldFetch(Object)} return true. often called when fetch failed.
+     * @param key the request key
+     */
+    public void reset(Object key){
+        final String k = String.valueOf(key);
+        mTimestamps.put(k, ABSENT);
+        if(mPrefs != null){
+            mPrefs.edit().remove(KEY_PREFIX + k).apply();
+        }
+    }
+
+    /**
+     * clear all keys. only the persisted keys of limiter are removed, the other data of the preferences is kept.
+     */
+    public void clear(){
+        mTimestamps.clear();
+        if(mPrefs != null){
+            SharedPreferences.Editor editor = mPrefs.edit();
+            for (String key : mPrefs.getAll().keySet()){
+                if(key.startsWith(KEY_PREFIX)){
+                    editor.remove(key);
+                }
+            }
+            editor.apply();
+        }
+    }
+
+    //load the persisted time on first access.
+    private Long getTimestamp(String key){
+        Long last = mTimestamps.get(key);
+        if(last != null){
+            return last;
+        }
+        Long persisted = mPrefs != null ? mPrefs.getLong(KEY_PREFIX + key, ABSENT) : ABSENT;
+        last = mTimestamps.putIfAbsent(key, persisted);
+        return last != null ? last : persisted;
+    }
+    private void persist(String key, long time){
+        if(mPrefs != null){
+            mPrefs.edit().putLong(KEY_PREFIX + key, time).apply();
+        }
+    }
+}
@@ -0,0 +1,78 @@
+package com.heaven7.android.ldext.res;
+
+import android.os.SystemClock;
+
+import com.heaven7.android.ldext.util.WeightedLruCache;
+
+/**
+ * the in-memory resource cache which is shared by resources. every entry has a ttl, after that the entry is stale.
+ * a stale entry is still returned (stale-while-revalidate), and it is evicted by the entry count and the estimated weight.
+ * @author heaven7
+ */
+public final class ResourceCache {
+
+    private final WeightedLruCache<Object, Entry<?>> mCache;
+
+    /**
+     * create resource cache
+     * @param maxCount the max entry count
+     * @param maxWeight the max estimated bytes
+     * @param weigher the weigher to estimate the bytes of data. null means every entry weight is 1.
+     */
+    public ResourceCache(int maxCount, long maxWeight, final WeightedLruCache.Weigher<Object, Object> weigher) {
+        this.mCache = new WeightedLruCache<>(maxCount, maxWeight, weigher == null ? null :
+                new WeightedLruCache.Weigher<Object, Entry<?>>() {
+            @Override
+            public int weigh(Object key, Entry<?> value) {
+                return weigher.weigh(key, value.data);
+            }
+        });
+    }
+
+    /**
+     * get the cache entry. the entry may be stale.
+     * @param key the request key
+     * @param <R> the data type
+     * @return the entry or null if not exists.
+     */
+    @SuppressWarnings("unchecked")
+    public <R> Entry<R> get(Object key){
+        return (Entry<R>) mCache.get(key);
+    }
+
+    /**
+     * put the data to cache
+     * @param key the request key
+     * @param data the data
+     * @param ttl the time-to-live in mills. during this time the entry is fresh.
+     */
+    public void put(Object key, Object data, long ttl){
+        mCache.put(key, new Entry<>(data, SystemClock.elapsedRealtime(), ttl));
+    }
+
+    public void invalidate(Object key){
+        mCache.remove(key);
+    }
+    public void clear(){
+        mCache.clear();
+    }
+
+    /**
+     * the cache entry
+     * @param <R> the data type
+     */
+    public static final class Entry<R>{
+        public final R data;
+        public final long time;
+        public final long ttl;
+
+        Entry(R data, long time, long ttl) {
+            this.data = data;
+            this.time = time;
+            this.ttl = ttl;
+        }
+        public boolean isFresh(){
+            return SystemClock.elapsedRealtime() - time < ttl;
+        }
+    }
+}
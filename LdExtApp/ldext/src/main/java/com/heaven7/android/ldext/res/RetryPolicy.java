@@ -0,0 +1,105 @@
+package com.heaven7.android.ldext.res;
+
+import java.util.Random;
+
+/**
+ * the retry policy of resource fetch. which use exponential backoff with full jitter.
+ * the delay of attempt n is random in [0, min(maxDelay, baseDelay * 2^(n-1))].
+ * @author heaven7
+ */
+public final class RetryPolicy {
+
+    private final Random mRandom = new Random();
+    private final int maxAttempts;
+    private final long baseDelay;
+    private final long maxDelay;
+    private final CodePredicate predicate;
+
+    private RetryPolicy(RetryPolicy.Builder builder) {
+        this.maxAttempts = builder.maxAttempts;
+        this.baseDelay = builder.baseDelay;
+        this.maxDelay = builder.maxDelay;
+        this.predicate = builder.predicate;
+    }
+
+    /**
+     * indicate should retry or not
+     * @param attempt the count of attempts already made
+     * @param code the error code of resource
+     * @return true if should retry
+     */
+    public boolean shouldRetry(int attempt, int code){
+        return attempt < maxAttempts && (predicate == null || predicate.shouldRetry(code));
+    }
+
+    /**
+     * get the delay before next attempt
+     * @param attempt the count of attempts already made
+     * @return the delay in mills
+     */
+    public long getDelay(int attempt){
+        int shift = Math.min(attempt - 1, 30);
+        long cap = baseDelay << shift;
+        if(cap <= 0 || cap > maxDelay){
+            cap = maxDelay;
+        }
+        return (long) (mRandom.nextDouble() * (cap + 1));
+    }
+
+    public int getMaxAttempts() {
+        return this.maxAttempts;
+    }
+    public long getBaseDelay() {
+        return this.baseDelay;
+    }
+    public long getMaxDelay() {
+        return this.maxDelay;
+    }
+    public CodePredicate getPredicate() {
+        return this.predicate;
+    }
+
+    /**
+     * the predicate on the error code of resource.
+     */
+    public interface CodePredicate{
+        boolean shouldRetry(int code);
+    }
+
+    public static class Builder {
+        private int maxAttempts = 3;
+        private long baseDelay = 500;
+        private long maxDelay = 10000;
+        private CodePredicate predicate;
+
+        /**
+         * set the max attempts. include the first attempt.
+         * @param maxAttempts the max attempts
+         * @return this
+         */
+        public Builder setMaxAttempts(int maxAttempts) {
+            this.maxAttempts = maxAttempts;
+            return this;
+        }
+        public Builder setBaseDelay(long baseDelay) {
+            this.baseDelay = baseDelay;
+            return this;
+        }
+        public Builder setMaxDelay(long maxDelay) {
+            this.maxDelay = maxDelay;
+            return this;
+        }
+        /**
+         * set the predicate on the error code. null means retry all errors.
+         * @param predicate the predicate
+         * @return this
+         */
+        public Builder setPredicate(CodePredicate predicate) {
+            this.predicate = predicate;
+            return this;
+        }
+        public RetryPolicy build() {
+            return new RetryPolicy(this);
+        }
+    }
+}
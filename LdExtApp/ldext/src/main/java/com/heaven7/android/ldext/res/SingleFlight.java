@@ -0,0 +1,204 @@
+package com.heaven7.android.ldext.res;
+
+import androidx.lifecycle.LiveData;
+import androidx.lifecycle.MediatorLiveData;
+import androidx.lifecycle.Observer;
+
+import com.heaven7.android.ldext.model.Resource;
+import com.heaven7.android.ldext.model.Status;
+import com.heaven7.java.base.util.Disposable;
+import com.heaven7.java.base.util.Scheduler;
+
+import java.util.HashMap;
+import java.util.Map;
+
+/**
+ * the single-flight registry. which coalesce the concurrent requests that share the same key into one in-flight call.
+ * every subscriber gets its own {@linkplain Flight} handle, and the shared call is released when the last handle is released.
+ * @author heaven7
+ */
+public final class SingleFlight {
+
+    private final Map<Object, SharedCall<?>> mCalls = new HashMap<>();
+
+    /**
+     * join the in-flight call of target key. or start a new one if there is no call for the key.
+     * @param key the request key
+     * @param scheduler the scheduler used to save data
+     * @param call the call which is only executed by the first subscriber
+     * @param <R> the result data type
+     * @return the flight handle of this subscriber. must call {@linkplain Flight#release()} when the subscriber leave.
+     */
+    @SuppressWarnings("unchecked")
+    public <R> Flight<R> join(Object key, Scheduler scheduler, Call<R> call){
+        SharedCall<R> shared;
+        boolean leader = false;
+        synchronized (mCalls){
+            shared = (SharedCall<R>) mCalls.get(key);
+            if(shared == null){
+                shared = new SharedCall<>(this, key);
+                mCalls.put(key, shared);
+                leader = true;
+            }
+            shared.mRefCount ++;
+        }
+        if(leader){
+            shared.execute(scheduler, call);
+        }
+        return new Flight<>(shared);
+    }
+
+    /**
+     * indicate there is an in-flight call for target key or not
+     * @param key the request key
+     * @return true if has
+     */
+    public boolean isInFlight(Object key){
+        synchronized (mCalls){
+            return mCalls.containsKey(key);
+        }
+    }
+
+    private void finish(SharedCall<?> shared){
+        synchronized (mCalls){
+            if(mCalls.get(shared.mKey) == shared){
+                mCalls.remove(shared.mKey);
+            }
+        }
+    }
+    //return true if this is the last handle of the shared call. the handle is only counted once.
+    private boolean release(Flight<?> flight){
+        final SharedCall<?> shared = flight.mShared;
+        synchronized (mCalls){
+            if(flight.mReleased){
+                return false;
+            }
+            flight.mReleased = true;
+            if(--shared.mRefCount == 0){
+                if(mCalls.get(shared.mKey) == shared){
+                    mCalls.remove(shared.mKey);
+                }
+                return true;
+            }
+            return false;
+        }
+    }
+
+    /**
+     * the shared call
+     * @param <R> the result data type
+     */
+    public interface Call<R>{
+        /**
+         * create the network source. only called once for one flight.
+         * @param token the cancellation token. which is cancelled when the last subscriber release.
+         * @return the network live data
+         */
+        LiveData<Resource<R>> createNetwork(CancellationToken token);
+
+        /**
+         * save the network data. this is called on the worker thread of scheduler.
+         * @param data the data
+         */
+        void saveNetworkData(R data);
+    }
+
+    /**
+     * the handle of one subscriber to the in-flight call.
+     * @param <R> the result data type
+     */
+    public static final class Flight<R>{
+        private final SharedCall<R> mShared;
+        //guarded by the calls of parent.
+        private boolean mReleased;
+
+        private Flight(SharedCall<R> shared) {
+            this.mShared = shared;
+        }
+
+        /**
+         * get the shared result. which only emit the final state (success after save, or error).
+         * @return the live data
+         */
+        public LiveData<Resource<R>> asLiveData(){
+            return mShared.mResultLD;
+        }
+
+        /**
+         * release the flight for current subscriber. the shared call is released when the last subscriber release.
+         * the repeated release of the same handle is ignored.
+         */
+        public void release(){
+            if(mShared.mParent.release(this)){
+                mShared.cancel();
+            }
+        }
+    }
+
+    /**
+     * the in-flight call which is shared by all subscribers of the same key.
+     * @param <R> the result data type
+     */
+    private static final class SharedCall<R>{
+        private final MediatorLiveData<Resource<R>> mResultLD = new MediatorLiveData<>();
+        private final CancelGroup mGroup = new CancelGroup();
+        private final SingleFlight mParent;
+        private final Object mKey;
+        private volatile Disposable mTask;
+        private volatile LiveData<Resource<R>> mNetwork;
+        //guarded by the calls of parent.
+        private int mRefCount;
+
+        SharedCall(SingleFlight parent, Object key) {
+            this.mParent = parent;
+            this.mKey = key;
+        }
+
+        void cancel(){
+            mGroup.cancel();
+            if(mTask != null){
+                mTask.dispose();
+                mTask = null;
+            }
+            LiveData<Resource<R>> network = mNetwork;
+            if(network != null){
+                mNetwork = null;
+                mResultLD.removeSource(network);
+                if(network instanceof Disposable){
+                    ((Disposable) network).dispose();
+                }
+            }
+        }
+
+        void execute(final Scheduler scheduler, final Call<R> call){
+            final LiveData<Resource<R>> network = call.createNetwork(mGroup);
+            mNetwork = network;
+            mResultLD.addSource(network, new Observer<Resource<R>>() {
+                @Override
+                public void onChanged(final Resource<R> response) {
+                    if (response.status == Status.SUCCESS) {
+                        mResultLD.removeSource(network);
+                        mNetwork = null;
+                        //the network is done. its listeners don't need the later cancel.
+                        mGroup.release();
+                        mTask = scheduler.newWorker().schedule(new Runnable() {
+                            @Override
+                            public void run() {
+                                mTask = null;
+                                call.saveNetworkData(response.data);
+                                mParent.finish(SharedCall.this);
+                                mResultLD.postValue(Resource.success(response.data));
+                            }
+                        });
+                    } else if (response.status == Status.ERROR) {
+                        mResultLD.removeSource(network);
+                        mNetwork = null;
+                        mGroup.release();
+                        mParent.finish(SharedCall.this);
+                        mResultLD.postValue(response);
+                    }
+                }
+            });
+        }
+    }
+}
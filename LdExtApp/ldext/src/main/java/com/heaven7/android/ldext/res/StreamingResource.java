@@ -0,0 +1,268 @@
+package com.heaven7.android.ldext.res;
+
+import androidx.arch.core.executor.ArchTaskExecutor;
+import androidx.lifecycle.LiveData;
+import androidx.lifecycle.MutableLiveData;
+
+import com.heaven7.android.ldext.model.Resource;
+import com.heaven7.android.ldext.model.Status;
+import com.heaven7.java.base.util.Scheduler;
+
+import java.io.IOException;
+import java.util.ArrayList;
+import java.util.Collections;
+import java.util.List;
+import java.util.concurrent.ArrayBlockingQueue;
+import java.util.concurrent.TimeUnit;
+import java.util.concurrent.atomic.AtomicBoolean;
+
+/**
+ * the streaming resource which emit the partial chunks and the byte-level progress as they arrive.
+ * the chunks in flight are bounded by the buffer capacity, when the buffer is full the reader waits for the main thread to drain.
+ * every emission carries the chunks drained since the last emission (see {@linkplain StreamProgress}).
+ * the buffer is only drained while the live data has active observers. so a stopped observer pauses the reader
+ * instead of losing the chunks, and the drain resumes when the observer is active again.
+ * <p>if save-directly is enabled the chunks are passed to {@linkplain #saveNetworkData(Object)} on the worker,
+ * and only the progress is emitted. so the whole payload is never materialized.</p>
+ * @param <C> the chunk type
+ * @author heaven7
+ */
+public abstract class StreamingResource<C> {
+
+    private static final long OFFER_TIMEOUT = 100;
+
+    private final MutableLiveData<Resource<StreamProgress<C>>> mResultLD = new MutableLiveData<Resource<StreamProgress<C>>>(){
+        @Override
+        protected void onActive() {
+            StreamTask task = mTask;
+            if(task != null){
+                task.scheduleDrain();
+            }
+        }
+    };
+    private final CancelGroup mGroup = new CancelGroup();
+    private final Scheduler mScheduler;
+    private final int mBufferSize;
+    private volatile CancelGroup mGeneration;
+    private volatile StreamTask mTask;
+    private boolean mSaveDirectly;
+
+    /**
+     * create streaming resource
+     * @param scheduler the scheduler to read stream
+     * @param bufferSize the max chunks in flight
+     */
+    public StreamingResource(Scheduler scheduler, int bufferSize) {
+        this.mScheduler = scheduler;
+        this.mBufferSize = bufferSize;
+    }
+
+    /**
+     * set save directly or not. if true, the chunks are passed to {@linkplain #saveNetworkData(Object)} on the worker,
+     * and only the progress is emitted.
+     * @param saveDirectly true to save directly
+     */
+    public void setSaveDirectly(boolean saveDirectly) {
+        this.mSaveDirectly = saveDirectly;
+    }
+
+    public void cancel(){
+        CancelGroup generation = mGeneration;
+        if(generation != null){
+            mGeneration = null;
+            generation.cancel();
+        }
+    }
+
+    public void start(){
+        cancel();
+        CancelGroup generation = mGroup.newChild();
+        mGeneration = generation;
+        mResultLD.postValue(Resource.<StreamProgress<C>>loading(null));
+        StreamTask task = new StreamTask(generation, mSaveDirectly);
+        mTask = task;
+        generation.schedule(mScheduler.newWorker(), task);
+    }
+
+    public LiveData<Resource<StreamProgress<C>>> asLiveData() {
+        return mResultLD;
+    }
+
+    /**
+     * open the stream. this is called on the worker thread.
+     * @return the chunk source
+     * @throws IOException if open failed
+     */
+    protected abstract ChunkSource<C> openStream() throws IOException;
+
+    /**
+     * open the stream with the cancellation token. which is cancelled when {@linkplain #cancel()} or the next {@linkplain #start()}.
+     * the blocking read can be aborted by the cancel listener. this is called on the worker thread.
+     * default is {@linkplain #openStream()}.
+     * @param token the cancellation token
+     * @return the chunk source
+     * @throws IOException if open failed
+     */
+    protected ChunkSource<C> openStream(CancellationToken token) throws IOException{
+        return openStream();
+    }
+
+    /**
+     * save the chunk. only called in save-directly mode, on the worker thread.
+     * @param chunk the chunk
+     */
+    protected void saveNetworkData(C chunk){
+
+    }
+
+    /**
+     * called on the worker thread when the stream is read completely.
+     */
+    protected void onStreamComplete(){
+
+    }
+
+    /**
+     * the chunk source
+     * @param <C> the chunk type
+     */
+    public interface ChunkSource<C>{
+        /**
+         * read next chunk. this is called on the worker thread.
+         * @return the chunk. or null if reach the end.
+         * @throws IOException if read failed
+         */
+        C read() throws IOException;
+
+        /**
+         * get the read bytes
+         * @return the read bytes
+         */
+        long getBytesRead();
+
+        /**
+         * get the content length
+         * @return the content length. or -1 if unknown.
+         */
+        long getContentLength();
+
+        void close();
+    }
+
+    /**
+     * the stream progress
+     * @param <C> the chunk type
+     */
+    public static final class StreamProgress<C>{
+        /** the chunks which arrived since last emission. empty in save-directly mode. */
+        public final List<C> chunks;
+        public final long bytesRead;
+        /** the content length. -1 means unknown */
+        public final long contentLength;
+
+        StreamProgress(List<C> chunks, long bytesRead, long contentLength) {
+            this.chunks = chunks;
+            this.bytesRead = bytesRead;
+            this.contentLength = contentLength;
+        }
+        /**
+         * get the progress
+         * @return the progress in [0, 1]. or -1 if the content length is unknown.
+         */
+        public float getProgress(){
+            return contentLength > 0 ? Math.min(1f, bytesRead * 1f / contentLength) : -1;
+        }
+    }
+
+    private class StreamTask implements Runnable{
+        final CancelGroup generation;
+        final boolean saveDirectly;
+        final ArrayBlockingQueue<C> buffer = new ArrayBlockingQueue<>(mBufferSize);
+        final AtomicBoolean drainScheduled = new AtomicBoolean(false);
+        volatile long bytesRead;
+        volatile long contentLength = -1;
+        volatile boolean completed;
+        volatile String error;
+
+        final Runnable drainTask = new Runnable() {
+            @Override
+            public void run() {
+                drain();
+            }
+        };
+
+        StreamTask(CancelGroup generation, boolean saveDirectly) {
+            this.generation = generation;
+            this.saveDirectly = saveDirectly;
+        }
+
+        @Override
+        public void run() {
+            ChunkSource<C> source = null;
+            //the token of this stream. which is released after the stream is closed.
+            final CancelGroup token = generation.newChild();
+            try {
+                source = openStream(token);
+                contentLength = source.getContentLength();
+                C chunk;
+                while (!generation.isCancelled() && (chunk = source.read()) != null){
+                    if(saveDirectly){
+                        saveNetworkData(chunk);
+                    }else {
+                        while (!buffer.offer(chunk, OFFER_TIMEOUT, TimeUnit.MILLISECONDS)){
+                            if(generation.isCancelled()){
+                                return;
+                            }
+                        }
+                    }
+                    bytesRead = source.getBytesRead();
+                    scheduleDrain();
+                }
+                if(!generation.isCancelled()){
+                    onStreamComplete();
+                    completed = true;
+                }
+            } catch (IOException | RuntimeException e) {
+                //the source or the save failed. the drained chunks are still valid.
+                error = e.getMessage() != null ? e.getMessage() : e.toString();
+            } catch (InterruptedException e) {
+                Thread.currentThread().interrupt();
+                return;
+            } finally {
+                if(source != null){
+                    source.close();
+                }
+                token.release();
+            }
+            scheduleDrain();
+        }
+        private void scheduleDrain(){
+            if(drainScheduled.compareAndSet(false, true)){
+                ArchTaskExecutor.getInstance().postToMainThread(drainTask);
+            }
+        }
+        //main thread
+        private void drain(){
+            drainScheduled.set(false);
+            //no one is watching. the chunks wait in the buffer, and onActive drains them.
+            if(generation.isCancelled() || !mResultLD.hasActiveObservers()){
+                return;
+            }
+            List<C> chunks;
+            if(buffer.isEmpty()){
+                chunks = Collections.emptyList();
+            }else {
+                chunks = new ArrayList<>(buffer.size());
+                buffer.drainTo(chunks);
+            }
+            StreamProgress<C> progress = new StreamProgress<>(chunks, bytesRead, contentLength);
+            if(error != null){
+                mResultLD.setValue(new Resource<>(Status.ERROR, progress, -1, error));
+            }else if(completed && buffer.isEmpty()){
+                mResultLD.setValue(Resource.success(progress));
+            }else {
+                mResultLD.setValue(Resource.loading(progress));
+            }
+        }
+    }
+}
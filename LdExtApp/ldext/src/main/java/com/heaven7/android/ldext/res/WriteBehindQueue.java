@@ -0,0 +1,188 @@
+package com.heaven7.android.ldext.res;
+
+import com.heaven7.java.base.util.Disposable;
+import com.heaven7.java.base.util.Scheduler;
+
+import java.util.ArrayList;
+import java.util.List;
+import java.util.concurrent.TimeUnit;
+
+/**
+ * the write-behind queue which collect the saves of many resources, and commit them in one batch.
+ * the batch is committed when the window elapsed or the size reach the threshold. every flush ends the window, so the
+ * next write opens a new one. After the batch commits,
+ * every write is notified by {@linkplain PendingWrite#onCommitted()}. which often re-read the db.
+ * if the batch failed, every write of it is notified by {@linkplain PendingWrite#onFailed(RuntimeException)} instead.
+ * @author heaven7
+ */
+public final class WriteBehindQueue {
+
+    private final Scheduler mScheduler;
+    private final long mWindow;
+    private final int mMaxBatchSize;
+    private final Committer mCommitter;
+
+    private final List<PendingWrite<?>> mPending = new ArrayList<>();
+    //the window state. guarded by mPending.
+    private boolean mFlushScheduled;
+    private int mWindowId;
+    private Disposable mWindowTask;
+
+    /**
+     * create write-behind queue
+     * @param scheduler the scheduler to commit
+     * @param window the window in mills to collect saves
+     * @param maxBatchSize the max size of one batch. the batch is committed immediately when reach it.
+     * @param committer the committer. null means apply every write one by one.
+     */
+    public WriteBehindQueue(Scheduler scheduler, long window, int maxBatchSize, Committer committer) {
+        this.mScheduler = scheduler;
+        this.mWindow = window;
+        this.mMaxBatchSize = maxBatchSize;
+        this.mCommitter = committer;
+    }
+
+    /**
+     * enqueue the write.
+     * @param write the write
+     */
+    public void enqueue(PendingWrite<?> write){
+        boolean flushNow = false;
+        boolean scheduleFlush = false;
+        final int windowId;
+        synchronized (mPending){
+            mPending.add(write);
+            if(mPending.size() >= mMaxBatchSize){
+                flushNow = true;
+            }else if(!mFlushScheduled){
+                mFlushScheduled = true;
+                scheduleFlush = true;
+            }
+            windowId = mWindowId;
+        }
+        if(flushNow){
+            mScheduler.newWorker().schedule(new Runnable() {
+                @Override
+                public void run() {
+                    flush();
+                }
+            });
+        }else if(scheduleFlush){
+            Disposable task = mScheduler.newWorker().scheduleDelay(new Runnable() {
+                @Override
+                public void run() {
+                    flushWindow(windowId);
+                }
+            }, mWindow, TimeUnit.MILLISECONDS);
+            synchronized (mPending){
+                //the window may be ended by a flush before the task is kept.
+                if(windowId == mWindowId){
+                    mWindowTask = task;
+                    task = null;
+                }
+            }
+            if(task != null){
+                task.dispose();
+            }
+        }
+    }
+
+    /**
+     * commit the pending writes on current thread. this should be called on worker thread.
+     */
+    public void flush(){
+        List<PendingWrite<?>> batch;
+        Disposable windowTask;
+        synchronized (mPending){
+            //end the window. the timer of it is disposed, and ignored if it still runs.
+            mFlushScheduled = false;
+            mWindowId ++;
+            windowTask = mWindowTask;
+            mWindowTask = null;
+            batch = mPending.isEmpty() ? null : new ArrayList<>(mPending);
+            mPending.clear();
+        }
+        if(windowTask != null){
+            windowTask.dispose();
+        }
+        if(batch == null){
+            return;
+        }
+        if(mCommitter != null){
+            try {
+                mCommitter.commit(batch);
+            }catch (RuntimeException e){
+                //the transaction is rolled back. no write of the batch is saved.
+                for (PendingWrite<?> write : batch){
+                    write.onFailed(e);
+                }
+                return;
+            }
+            for (PendingWrite<?> write : batch){
+                write.onCommitted();
+            }
+        }else {
+            //the writes are independent. one failed write doesn't fail the others.
+            for (PendingWrite<?> write : batch){
+                try {
+                    write.apply();
+                }catch (RuntimeException e){
+                    write.onFailed(e);
+                    continue;
+                }
+                write.onCommitted();
+            }
+        }
+    }
+
+    private void flushWindow(int windowId){
+        synchronized (mPending){
+            if(windowId != mWindowId){
+                return;
+            }
+        }
+        flush();
+    }
+
+    /**
+     * the committer which commit the writes in one batch. often in one db transaction.
+     * the committer must call {@linkplain PendingWrite#apply()} for every write. if the commit throws,
+     * the whole batch is treated as failed.
+     */
+    public interface Committer{
+        void commit(List<PendingWrite<?>> writes);
+    }
+
+    /**
+     * the pending write
+     * @param <R> the data type
+     */
+    public abstract static class PendingWrite<R>{
+        private final R data;
+
+        public PendingWrite(R data) {
+            this.data = data;
+        }
+        public R getData() {
+            return data;
+        }
+        /**
+         * apply the write. this is called on the worker thread during the batch commit.
+         */
+        public void apply(){
+            save(data);
+        }
+        protected abstract void save(R data);
+
+        /**
+         * called after the batch which contains this write is committed.
+         */
+        protected abstract void onCommitted();
+
+        /**
+         * called when the batch which contains this write failed. the data is not saved.
+         * @param e the exception of commit
+         */
+        protected abstract void onFailed(RuntimeException e);
+    }
+}
@@ -0,0 +1,274 @@
+package com.heaven7.android.ldext.util;
+
+import android.util.Log;
+
+import com.heaven7.java.base.util.Disposable;
+import com.heaven7.java.base.util.Scheduler;
+
+import java.util.ArrayDeque;
+import java.util.concurrent.Executors;
+import java.util.concurrent.ScheduledExecutorService;
+import java.util.concurrent.ScheduledFuture;
+import java.util.concurrent.ThreadFactory;
+import java.util.concurrent.TimeUnit;
+import java.util.concurrent.atomic.AtomicInteger;
+
+/**
+ * the bounded scheduler with priority lanes. the work runs on a small pool of reused threads, and the concurrency is bounded.
+ * the queued work of higher lane always runs first. and the low lanes ({@linkplain Priority#PREFETCH} and {@linkplain Priority#BACKGROUND})
+ * never take the last thread, so a visible work doesn't wait for them.
+ * <p>the workers are cached per lane, so {@linkplain #newWorker()} doesn't allocate. the exception of a task is logged,
+ * and the thread keeps serving the lanes.</p>
+ * @author heaven7
+ */
+public final class PriorityScheduler implements Scheduler {
+
+    private static final String TAG = "PriorityScheduler";
+    private final Object mLock = new Object();
+    private final ArrayDeque<Job>[] mLanes;
+    private final LaneWorker[] mWorkers;
+    private final int mMaxConcurrency;
+    private final ScheduledExecutorService mTimer;
+    private final AtomicInteger mThreadId = new AtomicInteger();
+
+    private int mThreadCount;
+    private int mIdleCount;
+    private int mRunningLow;
+    private boolean mShutdown;
+
+    /**
+     * the priority lanes. in the order from high to low.
+     */
+    public enum Priority{
+        /** the work which the user is waiting for right now. */
+        IMMEDIATE,
+        /** the work for the visible screen. this is the default. */
+        VISIBLE,
+        /** the work to prefetch. */
+        PREFETCH,
+        /** the work nobody is waiting for. */
+        BACKGROUND
+    }
+
+    /**
+     * create the priority scheduler
+     * @param maxConcurrency the max count of threads
+     */
+    @SuppressWarnings("unchecked")
+    public PriorityScheduler(int maxConcurrency) {
+        if(maxConcurrency < 2){
+            throw new IllegalArgumentException("maxConcurrency must >= 2");
+        }
+        this.mMaxConcurrency = maxConcurrency;
+        Priority[] priorities = Priority.values();
+        this.mLanes = new ArrayDeque[priorities.length];
+        this.mWorkers = new LaneWorker[priorities.length];
+        for (int i = 0; i < priorities.length; i++) {
+            mLanes[i] = new ArrayDeque<>();
+            mWorkers[i] = new LaneWorker(i);
+        }
+        this.mTimer = Executors.newSingleThreadScheduledExecutor(new ThreadFactory() {
+            @Override
+            public Thread newThread(Runnable r) {
+                Thread t = new Thread(r, "ldext-priority-timer");
+                t.setDaemon(true);
+                return t;
+            }
+        });
+    }
+
+    /**
+     * get the worker of target scheduler by priority. if the scheduler is not {@linkplain PriorityScheduler} the priority is ignored.
+     * @param scheduler the scheduler
+     * @param priority the priority
+     * @return the worker
+     */
+    public static Worker newWorker(Scheduler scheduler, Priority priority){
+        if(scheduler instanceof PriorityScheduler){
+            return ((PriorityScheduler) scheduler).newWorker(priority);
+        }
+        return scheduler.newWorker();
+    }
+
+    @Override
+    public Worker newWorker() {
+        return newWorker(Priority.VISIBLE);
+    }
+    public Worker newWorker(Priority priority) {
+        return mWorkers[priority.ordinal()];
+    }
+
+    /**
+     * shutdown the scheduler. the queued work is dropped.
+     */
+    public void shutdown(){
+        synchronized (mLock){
+            mShutdown = true;
+            for (ArrayDeque<Job> lane : mLanes){
+                lane.clear();
+            }
+            mLock.notifyAll();
+        }
+        mTimer.shutdownNow();
+    }
+
+    private void enqueue(Job job){
+        synchronized (mLock){
+            if(mShutdown || job.disposed){
+                return;
+            }
+            mLanes[job.lane].addLast(job);
+            if(mIdleCount > 0){
+                mLock.notifyAll();
+            }else if(mThreadCount < mMaxConcurrency){
+                startThread();
+            }
+        }
+    }
+    //called with lock
+    private void startThread(){
+        mThreadCount ++;
+        Thread t = new Thread(new Loop(), "ldext-priority-" + mThreadId.incrementAndGet());
+        t.setDaemon(true);
+        t.start();
+    }
+    //called with lock
+    private Job poll(){
+        for (int i = 0; i < mLanes.length; i++) {
+            //the low lanes never take the last thread.
+            if(i >= Priority.PREFETCH.ordinal() && mRunningLow >= mMaxConcurrency - 1){
+                return null;
+            }
+            Job job = mLanes[i].pollFirst();
+            if(job != null){
+                return job;
+            }
+        }
+        return null;
+    }
+    //called with lock
+    private boolean hasQueuedJob(){
+        for (ArrayDeque<Job> lane : mLanes){
+            if(!lane.isEmpty()){
+                return true;
+            }
+        }
+        return false;
+    }
+    private static boolean isLow(Job job){
+        return job.lane >= Priority.PREFETCH.ordinal();
+    }
+
+    private class Loop implements Runnable{
+        @Override
+        public void run() {
+            for (;;){
+                Job job;
+                synchronized (mLock){
+                    for (;;){
+                        if(mShutdown){
+                            mThreadCount --;
+                            return;
+                        }
+                        if((job = poll()) != null){
+                            break;
+                        }
+                        mIdleCount ++;
+                        try {
+                            mLock.wait();
+                        } catch (InterruptedException e) {
+                            //ignore
+                        } finally {
+                            mIdleCount --;
+                        }
+                    }
+                    if(isLow(job)){
+                        mRunningLow ++;
+                    }
+                }
+                try {
+                    if(!job.disposed){
+                        job.task.run();
+                    }
+                } catch (RuntimeException e){
+                    //the thread is shared by all lanes. a failed task must not take it away.
+                    Log.w(TAG, "task failed: " + job.task, e);
+                } catch (Error e){
+                    //the error ends this thread. the queued jobs are taken by a new one.
+                    synchronized (mLock){
+                        mThreadCount --;
+                        if(!mShutdown && hasQueuedJob()){
+                            startThread();
+                        }
+                    }
+                    throw e;
+                } finally {
+                    synchronized (mLock){
+                        if(isLow(job)){
+                            mRunningLow --;
+                            //the high lanes may wait for the thread.
+                            mLock.notifyAll();
+                        }
+                    }
+                }
+            }
+        }
+    }
+
+    private class Job implements Disposable, Runnable{
+        final int lane;
+        final Runnable task;
+        volatile boolean disposed;
+        volatile ScheduledFuture<?> future;
+
+        Job(int lane, Runnable task) {
+            this.lane = lane;
+            this.task = task;
+        }
+        //called by timer
+        @Override
+        public void run() {
+            enqueue(this);
+        }
+        @Override
+        public void dispose() {
+            disposed = true;
+            ScheduledFuture<?> f = future;
+            if(f != null){
+                f.cancel(false);
+            }
+            synchronized (mLock){
+                mLanes[lane].remove(this);
+            }
+        }
+        public boolean isDisposed() {
+            return disposed;
+        }
+    }
+
+    private class LaneWorker implements Worker{
+        final int lane;
+
+        LaneWorker(int lane) {
+            this.lane = lane;
+        }
+        @Override
+        public Disposable schedule(Runnable task) {
+            Job job = new Job(lane, task);
+            enqueue(job);
+            return job;
+        }
+        @Override
+        public Disposable scheduleDelay(Runnable task, long delay, TimeUnit unit) {
+            Job job = new Job(lane, task);
+            job.future = mTimer.schedule(job, delay, unit);
+            return job;
+        }
+        @Override
+        public Disposable schedulePeriodically(Runnable task, long initDelay, long period, TimeUnit unit) {
+            Job job = new Job(lane, task);
+            job.future = mTimer.scheduleAtFixedRate(job, initDelay, period, unit);
+            return job;
+        }
+    }
+}
@@ -0,0 +1,155 @@
+package com.heaven7.android.ldext.util;
+
+import java.util.AbstractMap;
+import java.util.ArrayList;
+import java.util.Iterator;
+import java.util.LinkedHashMap;
+import java.util.List;
+import java.util.Map;
+
+/**
+ * the thread-safe lru cache which is bounded by the entry count and the estimated weight.
+ * @param <K> the key type
+ * @param <V> the value type
+ * @author heaven7
+ */
+public class WeightedLruCache<K, V> {
+
+    private final LinkedHashMap<K, Node<V>> mMap = new LinkedHashMap<>(16, 0.75f, true);
+    private final int mMaxCount;
+    private final long mMaxWeight;
+    private final Weigher<? super K, ? super V> mWeigher;
+    private long mWeight;
+
+    /**
+     * create lru cache
+     * @param maxCount the max entry count
+     * @param maxWeight the max total weight. often is the estimated bytes.
+     * @param weigher the weigher. null means every entry weight is 1.
+     */
+    public WeightedLruCache(int maxCount, long maxWeight, Weigher<? super K, ? super V> weigher) {
+        if(maxCount <= 0 || maxWeight <= 0){
+            throw new IllegalArgumentException("maxCount and maxWeight must > 0");
+        }
+        this.mMaxCount = maxCount;
+        this.mMaxWeight = maxWeight;
+        this.mWeigher = weigher;
+    }
+
+    public V get(K key){
+        synchronized (this){
+            Node<V> node = mMap.get(key);
+            return node != null ? node.value : null;
+        }
+    }
+
+    public V put(K key, V value){
+        int weight = mWeigher != null ? mWeigher.weigh(key, value) : 1;
+        if(weight < 0){
+            throw new IllegalStateException("negative weight: " + key + "=" + value);
+        }
+        V oldValue;
+        List<Map.Entry<K, Node<V>>> evicted;
+        synchronized (this){
+            Node<V> old = mMap.put(key, new Node<>(value, weight));
+            mWeight += weight;
+            if(old != null){
+                mWeight -= old.weight;
+                oldValue = old.value;
+            }else {
+                oldValue = null;
+            }
+            evicted = trimToSize();
+        }
+        if(oldValue != null){
+            onEntryRemoved(key, oldValue);
+        }
+        dispatchRemoved(evicted);
+        return oldValue;
+    }
+
+    public V remove(K key){
+        V oldValue;
+        synchronized (this){
+            Node<V> old = mMap.remove(key);
+            if(old == null){
+                return null;
+            }
+            mWeight -= old.weight;
+            oldValue = old.value;
+        }
+        onEntryRemoved(key, oldValue);
+        return oldValue;
+    }
+
+    public synchronized int size(){
+        return mMap.size();
+    }
+    public synchronized long weight(){
+        return mWeight;
+    }
+    public void clear(){
+        List<Map.Entry<K, Node<V>>> removed;
+        synchronized (this){
+            removed = mMap.isEmpty() ? null : new ArrayList<>(mMap.entrySet());
+            mMap.clear();
+            mWeight = 0;
+        }
+        dispatchRemoved(removed);
+    }
+
+    /**
+     * called when the entry is removed, replaced, evicted or cleared. this is called without lock.
+     * @param key the key
+     * @param value the old value
+     */
+    protected void onEntryRemoved(K key, V value){
+
+    }
+
+    //called with lock. return the evicted entries, or null if nothing is evicted.
+    private List<Map.Entry<K, Node<V>>> trimToSize(){
+        List<Map.Entry<K, Node<V>>> evicted = null;
+        Iterator<Map.Entry<K, Node<V>>> it = mMap.entrySet().iterator();
+        while ((mMap.size() > mMaxCount || mWeight > mMaxWeight) && it.hasNext()){
+            Map.Entry<K, Node<V>> eldest = it.next();
+            if(evicted == null){
+                evicted = new ArrayList<>(2);
+            }
+            //the entry of LinkedHashMap is not valid after remove.
+            evicted.add(new AbstractMap.SimpleImmutableEntry<>(eldest));
+            it.remove();
+            mWeight -= eldest.getValue().weight;
+        }
+        return evicted;
+    }
+    //called without lock
+    private void dispatchRemoved(List<Map.Entry<K, Node<V>>> removed){
+        if(removed == null){
+            return;
+        }
+        for (int i = 0, size = removed.size(); i < size; i++) {
+            Map.Entry<K, Node<V>> e = removed.get(i);
+            onEntryRemoved(e.getKey(), e.getValue().value);
+        }
+    }
+
+    /**
+     * the weigher to estimate the weight of entry
+     * @param <K> the key type
+     * @param <V> the value type
+     */
+    public interface Weigher<K, V>{
+        int weigh(K key, V value);
+    }
+
+    private static class Node<V>{
+        final V value;
+        final int weight;
+
+        Node(V value, int weight) {
+            this.value = value;
+            this.weight = weight;
+        }
+    }
+}
@@ -0,0 +1,75 @@
+package com.heaven7.android.ldext;
+
+import androidx.arch.core.executor.ArchTaskExecutor;
+import androidx.arch.core.executor.TaskExecutor;
+
+import org.junit.rules.TestWatcher;
+import org.junit.runner.Description;
+
+import java.util.concurrent.ConcurrentLinkedQueue;
+
+/**
+ * the rule which simulate the main looper for test. the task posted to main thread is queued until
+ * {@linkplain #runNext()} or {@linkplain #runAll()}, and every run is one main-loop turn.
+ * the thread which run the test is the main thread. the disk-io tasks run in place.
+ * @author heaven7
+ */
+public final class MainLooperRule extends TestWatcher {
+
+    private final ConcurrentLinkedQueue<Runnable> mTasks = new ConcurrentLinkedQueue<>();
+    private volatile Thread mMainThread;
+
+    @Override
+    protected void starting(Description description) {
+        mMainThread = Thread.currentThread();
+        ArchTaskExecutor.getInstance().setDelegate(new TaskExecutor() {
+            @Override
+            public void executeOnDiskIO(Runnable runnable) {
+                runnable.run();
+            }
+            @Override
+            public void postToMainThread(Runnable runnable) {
+                mTasks.offer(runnable);
+            }
+            @Override
+            public boolean isMainThread() {
+                return Thread.currentThread() == mMainThread;
+            }
+        });
+    }
+
+    @Override
+    protected void finished(Description description) {
+        ArchTaskExecutor.getInstance().setDelegate(null);
+        mTasks.clear();
+    }
+
+    /**
+     * run the first queued task
+     * @return true if a task was run
+     */
+    public boolean runNext(){
+        Runnable task = mTasks.poll();
+        if(task == null){
+            return false;
+        }
+        task.run();
+        return true;
+    }
+
+    /**
+     * run the queued tasks until empty. include the tasks which are posted during run.
+     * @return the count of run tasks
+     */
+    public int runAll(){
+        int count = 0;
+        while (runNext()){
+            count ++;
+        }
+        return count;
+    }
+
+    public int getPendingCount(){
+        return mTasks.size();
+    }
+}
@@ -0,0 +1,34 @@
+package com.heaven7.android.ldext;
+
+import androidx.lifecycle.Observer;
+
+import java.util.ArrayList;
+import java.util.List;
+
+/**
+ * the observer which record the received values.
+ * @param <T> the value type
+ * @author heaven7
+ */
+public final class TestObserver<T> implements Observer<T> {
+
+    private final List<T> mValues = new ArrayList<>();
+
+    @Override
+    public void onChanged(T t) {
+        mValues.add(t);
+    }
+
+    public List<T> values(){
+        return mValues;
+    }
+    public int count(){
+        return mValues.size();
+    }
+    public T last(){
+        return mValues.isEmpty() ? null : mValues.get(mValues.size() - 1);
+    }
+    public void clear(){
+        mValues.clear();
+    }
+}
@@ -0,0 +1,135 @@
+package com.heaven7.android.ldext;
+
+import com.heaven7.java.base.util.Disposable;
+import com.heaven7.java.base.util.Scheduler;
+
+import java.util.ArrayList;
+import java.util.List;
+import java.util.concurrent.TimeUnit;
+
+/**
+ * the virtual-time scheduler for test. the delayed and periodic tasks run only when the time is advanced.
+ * the immediate tasks run in place, or are queued if {@linkplain #setQueueImmediate(boolean)} is set.
+ * all tasks run on the calling thread.
+ * @author heaven7
+ */
+public final class TestScheduler implements Scheduler {
+
+    private final List<Task> mTasks = new ArrayList<>();
+    private final Worker mWorker = new TestWorker();
+    private boolean mQueueImmediate;
+    private long mNow;
+    private int mScheduledCount;
+
+    @Override
+    public Worker newWorker() {
+        return mWorker;
+    }
+
+    /**
+     * set to queue the immediate tasks until {@linkplain #triggerActions()} or {@linkplain #advanceBy(long)}.
+     * @param queue true to queue
+     * @return this
+     */
+    public TestScheduler setQueueImmediate(boolean queue){
+        this.mQueueImmediate = queue;
+        return this;
+    }
+
+    public long now(){
+        return mNow;
+    }
+
+    /**
+     * get the count of scheduled tasks since created. include the disposed ones.
+     * @return the count
+     */
+    public int getScheduledCount(){
+        return mScheduledCount;
+    }
+
+    /**
+     * get the count of tasks which are not run and not disposed
+     * @return the count
+     */
+    public int getPendingCount(){
+        return mTasks.size();
+    }
+
+    /**
+     * run the tasks which are due now
+     */
+    public void triggerActions(){
+        advanceBy(0);
+    }
+
+    /**
+     * advance the time and run the due tasks in time order
+     * @param millis the time in mills
+     */
+    public void advanceBy(long millis){
+        final long target = mNow + millis;
+        for(;;){
+            Task next = null;
+            for (Task task : mTasks){
+                if(task.time <= target && (next == null || task.time < next.time)){
+                    next = task;
+                }
+            }
+            if(next == null){
+                break;
+            }
+            mTasks.remove(next);
+            mNow = Math.max(mNow, next.time);
+            if(next.period > 0){
+                next.time = mNow + next.period;
+                mTasks.add(next);
+            }
+            next.runnable.run();
+        }
+        mNow = target;
+    }
+
+    private Task add(Runnable runnable, long delay, long period){
+        mScheduledCount ++;
+        Task task = new Task(runnable, mNow + Math.max(0, delay), period);
+        mTasks.add(task);
+        return task;
+    }
+
+    private class TestWorker implements Worker{
+        @Override
+        public Disposable schedule(Runnable task) {
+            if(mQueueImmediate){
+                return add(task, 0, 0);
+            }
+            mScheduledCount ++;
+            task.run();
+            return new Task(task, mNow, 0);
+        }
+        @Override
+        public Disposable scheduleDelay(Runnable task, long delay, TimeUnit unit) {
+            return add(task, unit.toMillis(delay), 0);
+        }
+        @Override
+        public Disposable schedulePeriodically(Runnable task, long initDelay, long period, TimeUnit unit) {
+            return add(task, unit.toMillis(initDelay), unit.toMillis(period));
+        }
+    }
+
+    private class Task implements Disposable{
+        final Runnable runnable;
+        final long period;
+        long time;
+
+        Task(Runnable runnable, long time, long period) {
+            this.runnable = runnable;
+            this.time = time;
+            this.period = period;
+        }
+        @Override
+        public void dispose() {
+            mTasks.remove(this);
+        }
+    }
+}
@@ -0,0 +1,239 @@
+package com.heaven7.android.ldext.livedata;
+
+import com.heaven7.android.ldext.MainLooperRule;
+import com.heaven7.android.ldext.TestObserver;
+
+import org.junit.Rule;
+import org.junit.Test;
+
+import java.util.ArrayList;
+import java.util.Arrays;
+import java.util.List;
+import java.util.concurrent.CountDownLatch;
+
+import static org.junit.Assert.assertEquals;
+import static org.junit.Assert.assertFalse;
+import static org.junit.Assert.assertTrue;
+
+public class AbsoluteLiveDataTest {
+
+    @Rule
+    public MainLooperRule mLooper = new MainLooperRule();
+
+    private final TestObserver<Integer> mObserver = new TestObserver<>();
+
+    @Test
+    public void testBufferedDeliverInBatches(){
+        AbsoluteLiveData<Integer> data = new AbsoluteLiveData<Integer>().setBufferedMode(2);
+        data.observeForever(mObserver);
+        for (int i = 1; i <= 5; i++) {
+            data.postValue(i);
+        }
+        assertEquals(0, mObserver.count());
+        //one scheduled drain for all posts.
+        assertEquals(1, mLooper.getPendingCount());
+
+        mLooper.runNext();
+        assertEquals(Arrays.asList(1, 2), mObserver.values());
+        mLooper.runNext();
+        assertEquals(Arrays.asList(1, 2, 3, 4), mObserver.values());
+        mLooper.runNext();
+        assertEquals(Arrays.asList(1, 2, 3, 4, 5), mObserver.values());
+        assertEquals(0, mLooper.getPendingCount());
+    }
+
+    @Test
+    public void testBufferedDeliverNull(){
+        AbsoluteLiveData<Integer> data = new AbsoluteLiveData<Integer>().setBufferedMode(10);
+        data.observeForever(mObserver);
+        data.postValue(1);
+        data.postValue(null);
+        data.postValue(2);
+        mLooper.runAll();
+        assertEquals(Arrays.asList(1, null, 2), mObserver.values());
+    }
+
+    @Test
+    public void testBufferedKeepOrderPerThread() throws InterruptedException {
+        final AbsoluteLiveData<Integer> data = new AbsoluteLiveData<Integer>().setBufferedMode(16);
+        data.observeForever(mObserver);
+        final int threadCount = 4;
+        final int postCount = 500;
+        final CountDownLatch latch = new CountDownLatch(threadCount);
+        for (int t = 0; t < threadCount; t++) {
+            final int base = t * postCount;
+            new Thread(new Runnable() {
+                @Override
+                public void run() {
+                    for (int i = 0; i < postCount; i++) {
+                        data.postValue(base + i);
+                    }
+                    latch.countDown();
+                }
+            }).start();
+        }
+        latch.await();
+        mLooper.runAll();
+
+        assertEquals(threadCount * postCount, mObserver.count());
+        List<Integer> lasts = new ArrayList<>();
+        for (int t = 0; t < threadCount; t++) {
+            lasts.add(t * postCount - 1);
+        }
+        for (Integer value : mObserver.values()){
+            int t = value / postCount;
+            assertTrue(value > lasts.get(t));
+            lasts.set(t, value);
+        }
+    }
+
+    @Test
+    public void testStickyDeliverLastThenNew(){
+        AbsoluteLiveData<Integer> data = new AbsoluteLiveData<>(true);
+        data.setValue(1);
+        data.observeForever(mObserver);
+        assertEquals(Arrays.asList(1), mObserver.values());
+
+        data.setValue(2);
+        assertEquals(Arrays.asList(1, 2), mObserver.values());
+
+        TestObserver<Integer> observer = new TestObserver<>();
+        data.observeForever(observer);
+        assertEquals(Arrays.asList(2), observer.values());
+    }
+
+    @Test
+    public void testStickyReset(){
+        AbsoluteLiveData<Integer> data = new AbsoluteLiveData<>(true);
+        data.setValue(1);
+        data.reset();
+        data.observeForever(mObserver);
+        assertEquals(0, mObserver.count());
+
+        data.setValue(2);
+        assertEquals(Arrays.asList(2), mObserver.values());
+    }
+
+    @Test
+    public void testSingleDeliverOnlyUndelivered(){
+        SingleLiveEvent<Integer> event = new SingleLiveEvent<>();
+        event.setValue(1);
+        event.observeForever(mObserver);
+        assertEquals(Arrays.asList(1), mObserver.values());
+
+        TestObserver<Integer> observer = new TestObserver<>();
+        event.observeForever(observer);
+        assertEquals(0, observer.count());
+
+        event.setValue(2);
+        assertEquals(Arrays.asList(1, 2), mObserver.values());
+        assertEquals(Arrays.asList(2), observer.values());
+    }
+
+    @Test
+    public void testInitialValueNotDeliveredToNonSticky(){
+        AbsoluteLiveData<Integer> data = new AbsoluteLiveData<>(1);
+        data.observeForever(mObserver);
+        assertEquals(0, mObserver.count());
+
+        data.setValue(2);
+        assertEquals(Arrays.asList(2), mObserver.values());
+        //the later value is delivered to the new observer.
+        TestObserver<Integer> observer = new TestObserver<>();
+        data.observeForever(observer);
+        assertEquals(Arrays.asList(2), observer.values());
+    }
+
+    @Test
+    public void testInitialValueNotDeliveredToSingle(){
+        SingleLiveEvent<Integer> event = new SingleLiveEvent<>(1);
+        event.observeForever(mObserver);
+        assertEquals(0, mObserver.count());
+
+        event.setValue(2);
+        assertEquals(Arrays.asList(2), mObserver.values());
+    }
+
+    @Test
+    public void testInitialValueDeliveredToSticky(){
+        AbsoluteLiveData<Integer> data = new AbsoluteLiveData<>(1, true);
+        data.observeForever(mObserver);
+        assertEquals(Arrays.asList(1), mObserver.values());
+    }
+
+    @Test
+    public void testRemoveObserverByBase(){
+        AbsoluteLiveData<Integer> data = new AbsoluteLiveData<>();
+        data.observeForever(mObserver);
+        data.observeForever(mObserver);
+        data.setValue(1);
+        assertEquals(Arrays.asList(1), mObserver.values());
+
+        data.removeObserver(mObserver);
+        assertFalse(data.hasObservers());
+        data.setValue(2);
+        assertEquals(Arrays.asList(1), mObserver.values());
+
+        //observe again after removed.
+        data.observeForever(mObserver);
+        data.setValue(3);
+        assertEquals(Arrays.asList(1, 2, 3), mObserver.values());
+    }
+
+    @Test
+    public void testPostConflate(){
+        AbsoluteLiveData<Integer> data = new AbsoluteLiveData<>();
+        data.observeForever(mObserver);
+        data.postValue(1);
+        data.postValue(2);
+        data.postValue(3);
+        assertEquals(1, mLooper.getPendingCount());
+
+        mLooper.runAll();
+        assertEquals(Arrays.asList(3), mObserver.values());
+
+        //the post after dispatch is scheduled again.
+        data.postValue(null);
+        assertEquals(1, mLooper.getPendingCount());
+        mLooper.runAll();
+        assertEquals(Arrays.asList(3, null), mObserver.values());
+    }
+
+    @Test
+    public void testPostStickyValueSetOnDispatch(){
+        AbsoluteLiveData<Integer> data = new AbsoluteLiveData<>(true);
+        data.postValue(1);
+        data.observeForever(mObserver);
+        assertEquals(0, mObserver.count());
+
+        mLooper.runAll();
+        assertEquals(Arrays.asList(1), mObserver.values());
+        TestObserver<Integer> observer = new TestObserver<>();
+        data.observeForever(observer);
+        assertEquals(Arrays.asList(1), observer.values());
+    }
+
+    @Test
+    public void testConcurrentPostScheduleOnce() throws InterruptedException {
+        final AbsoluteLiveData<Integer> data = new AbsoluteLiveData<>();
+        data.observeForever(mObserver);
+        final int threadCount = 4;
+        final CountDownLatch latch = new CountDownLatch(threadCount);
+        for (int t = 0; t < threadCount; t++) {
+            new Thread(new Runnable() {
+                @Override
+                public void run() {
+                    for (int i = 0; i < 1000; i++) {
+                        data.postValue(i);
+                    }
+                    latch.countDown();
+                }
+            }).start();
+        }
+        latch.await();
+        assertEquals(1, mLooper.getPendingCount());
+
+        mLooper.runAll();
+        assertEquals(Arrays.asList(999), mObserver.values());
+    }
+}
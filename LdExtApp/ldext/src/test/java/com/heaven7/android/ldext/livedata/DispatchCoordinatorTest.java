@@ -0,0 +1,110 @@
+package com.heaven7.android.ldext.livedata;
+
+import androidx.arch.core.executor.testing.InstantTaskExecutorRule;
+import androidx.lifecycle.Observer;
+
+import com.heaven7.android.ldext.TestObserver;
+
+import org.junit.Rule;
+import org.junit.Test;
+
+import java.util.ArrayList;
+import java.util.Arrays;
+import java.util.List;
+
+import static org.junit.Assert.assertEquals;
+
+public class DispatchCoordinatorTest {
+
+    @Rule
+    public InstantTaskExecutorRule mRule = new InstantTaskExecutorRule();
+
+    private final TestFrameScheduler mFrames = new TestFrameScheduler();
+    private final TestTicker mTicker = new TestTicker();
+
+    @Test
+    public void testDeliverAllInOneFrame(){
+        DispatchCoordinator coordinator = new DispatchCoordinator(mFrames, mTicker, Long.MAX_VALUE);
+        AbsoluteLiveData<Integer> first = new AbsoluteLiveData<Integer>().setDispatchCoordinator(coordinator);
+        AbsoluteLiveData<Integer> second = new AbsoluteLiveData<Integer>().setDispatchCoordinator(coordinator);
+        TestObserver<Integer> firstObserver = new TestObserver<>();
+        TestObserver<Integer> secondObserver = new TestObserver<>();
+        first.observeForever(firstObserver);
+        second.observeForever(secondObserver);
+
+        first.postValue(1);
+        first.postValue(2);
+        second.postValue(10);
+        assertEquals(0, firstObserver.count());
+        assertEquals(0, secondObserver.count());
+        assertEquals(1, mFrames.frames.size());
+
+        mFrames.runFrame();
+        //the values posted in one frame are conflated.
+        assertEquals(Arrays.asList(2), firstObserver.values());
+        assertEquals(Arrays.asList(10), secondObserver.values());
+        assertEquals(0, mFrames.frames.size());
+    }
+
+    @Test
+    public void testBudgetDeferRestToNextFrame(){
+        //every tick costs 1 nano.
+        DispatchCoordinator coordinator = new DispatchCoordinator(mFrames, mTicker, 2);
+        List<TestObserver<Integer>> observers = new ArrayList<>();
+        for (int i = 0; i < 3; i++) {
+            AbsoluteLiveData<Integer> data = new AbsoluteLiveData<Integer>().setDispatchCoordinator(coordinator);
+            TestObserver<Integer> observer = new TestObserver<>();
+            data.observeForever(observer);
+            data.postValue(i);
+            observers.add(observer);
+        }
+        mFrames.runFrame();
+        assertEquals(1, observers.get(0).count());
+        assertEquals(1, observers.get(1).count());
+        assertEquals(0, observers.get(2).count());
+        assertEquals(1, mFrames.frames.size());
+
+        mFrames.runFrame();
+        assertEquals(Arrays.asList(2), observers.get(2).values());
+        assertEquals(0, mFrames.frames.size());
+    }
+
+    @Test
+    public void testPostDuringFrame(){
+        DispatchCoordinator coordinator = new DispatchCoordinator(mFrames, mTicker, Long.MAX_VALUE);
+        final AbsoluteLiveData<Integer> data = new AbsoluteLiveData<Integer>().setDispatchCoordinator(coordinator);
+        final TestObserver<Integer> observer = new TestObserver<>();
+        data.observeForever(observer);
+        data.observeForever(new Observer<Integer>() {
+            @Override
+            public void onChanged(Integer value) {
+                if(value == 1){
+                    data.postValue(2);
+                }
+            }
+        });
+        data.postValue(1);
+        mFrames.runFrame();
+        //the pending value is taken before dispatch. so the post during dispatch is not lost.
+        assertEquals(Arrays.asList(1, 2), observer.values());
+    }
+
+    private static class TestFrameScheduler implements DispatchCoordinator.FrameScheduler{
+        final List<Runnable> frames = new ArrayList<>();
+        @Override
+        public void scheduleFrame(Runnable frame) {
+            frames.add(frame);
+        }
+        void runFrame(){
+            frames.remove(0).run();
+        }
+    }
+
+    private static class TestTicker implements DispatchCoordinator.Ticker{
+        long now;
+        @Override
+        public long nanoTime() {
+            return now ++;
+        }
+    }
+}
@@ -0,0 +1,180 @@
+package com.heaven7.android.ldext.livedata;
+
+import androidx.arch.core.executor.testing.InstantTaskExecutorRule;
+import androidx.lifecycle.LiveData;
+import androidx.lifecycle.MutableLiveData;
+
+import com.heaven7.android.ldext.TestObserver;
+
+import org.junit.Rule;
+import org.junit.Test;
+
+import java.util.ArrayList;
+import java.util.Arrays;
+import java.util.Comparator;
+import java.util.List;
+
+import static org.junit.Assert.assertEquals;
+
+public class LiveDataOperatorsTest {
+
+    @Rule
+    public InstantTaskExecutorRule mRule = new InstantTaskExecutorRule();
+
+    private final TestTimerSource mTimer = new TestTimerSource();
+    private final MutableLiveData<Integer> mUpstream = new MutableLiveData<>();
+    private final TestObserver<Integer> mObserver = new TestObserver<>();
+
+    @Test
+    public void testDebounce(){
+        LiveDataOperators.debounce(mUpstream, 100, mTimer).observeForever(mObserver);
+        mUpstream.setValue(1);
+        mTimer.advanceBy(50);
+        mUpstream.setValue(2);
+        //the single timer wait the rest of window.
+        assertEquals(1, mTimer.tasks.size());
+        mTimer.advanceBy(50);
+        assertEquals(0, mObserver.count());
+
+        mTimer.advanceBy(50);
+        assertEquals(Arrays.asList(2), mObserver.values());
+        assertEquals(0, mTimer.tasks.size());
+    }
+
+    @Test
+    public void testDebounceResumeAfterInactive(){
+        LiveData<Integer> debounce = LiveDataOperators.debounce(mUpstream, 100, mTimer);
+        debounce.observeForever(mObserver);
+        mUpstream.setValue(1);
+        debounce.removeObserver(mObserver);
+        assertEquals(0, mTimer.tasks.size());
+
+        mTimer.advanceBy(50);
+        debounce.observeForever(mObserver);
+        //the replay of upstream is not a new value.
+        mTimer.advanceBy(50);
+        assertEquals(Arrays.asList(1), mObserver.values());
+    }
+
+    @Test
+    public void testThrottleFirst(){
+        LiveDataOperators.throttleFirst(mUpstream, 100, mTimer).observeForever(mObserver);
+        mUpstream.setValue(1);
+        mTimer.advanceBy(50);
+        mUpstream.setValue(2);
+        mTimer.advanceBy(50);
+        mUpstream.setValue(3);
+        assertEquals(Arrays.asList(1, 3), mObserver.values());
+        assertEquals(0, mTimer.tasks.size());
+    }
+
+    @Test
+    public void testThrottleLatest(){
+        LiveDataOperators.throttleLatest(mUpstream, 100, mTimer).observeForever(mObserver);
+        mUpstream.setValue(1);
+        mTimer.advanceBy(50);
+        mUpstream.setValue(2);
+        mUpstream.setValue(3);
+        assertEquals(Arrays.asList(1), mObserver.values());
+
+        mTimer.advanceBy(50);
+        assertEquals(Arrays.asList(1, 3), mObserver.values());
+        mTimer.advanceBy(1000);
+        assertEquals(Arrays.asList(1, 3), mObserver.values());
+    }
+
+    @Test
+    public void testSample(){
+        LiveDataOperators.sample(mUpstream, 100, mTimer).observeForever(mObserver);
+        mUpstream.setValue(1);
+        mUpstream.setValue(2);
+        mTimer.advanceBy(100);
+        assertEquals(Arrays.asList(2), mObserver.values());
+
+        //the period without new value emit nothing.
+        mTimer.advanceBy(100);
+        assertEquals(Arrays.asList(2), mObserver.values());
+        mUpstream.setValue(3);
+        mTimer.advanceBy(100);
+        assertEquals(Arrays.asList(2, 3), mObserver.values());
+    }
+
+    @Test
+    public void testDistinct(){
+        LiveDataOperators.distinctUntilChanged(mUpstream).observeForever(mObserver);
+        mUpstream.setValue(1);
+        mUpstream.setValue(1);
+        mUpstream.setValue(2);
+        mUpstream.setValue(null);
+        mUpstream.setValue(null);
+        mUpstream.setValue(2);
+        assertEquals(Arrays.asList(1, 2, null, 2), mObserver.values());
+    }
+
+    @Test
+    public void testDistinctComparator(){
+        MutableLiveData<String> upstream = new MutableLiveData<>();
+        TestObserver<String> observer = new TestObserver<>();
+        LiveDataOperators.distinctUntilChanged(upstream, new Comparator<String>() {
+            @Override
+            public int compare(String o1, String o2) {
+                return o1.compareToIgnoreCase(o2);
+            }
+        }).observeForever(observer);
+        upstream.setValue("a");
+        upstream.setValue("A");
+        upstream.setValue(null);
+        upstream.setValue("b");
+        assertEquals(Arrays.asList("a", null, "b"), observer.values());
+    }
+
+    private static class TestTimerSource implements OperatorLiveData.TimerSource{
+        final List<Task> tasks = new ArrayList<>();
+        long now;
+
+        @Override
+        public long now() {
+            return now;
+        }
+        @Override
+        public void postDelayed(Runnable task, long delay) {
+            tasks.add(new Task(task, now + delay));
+        }
+        @Override
+        public void remove(Runnable task) {
+            for (int i = tasks.size() - 1; i >= 0; i--) {
+                if(tasks.get(i).task == task){
+                    tasks.remove(i);
+                }
+            }
+        }
+        //run the due tasks in order of time.
+        void advanceBy(long delta){
+            final long target = now + delta;
+            for (;;){
+                Task next = null;
+                for (Task t : tasks){
+                    if(t.time <= target && (next == null || t.time < next.time)){
+                        next = t;
+                    }
+                }
+                if(next == null){
+                    break;
+                }
+                tasks.remove(next);
+                now = next.time;
+                next.task.run();
+            }
+            now = target;
+        }
+    }
+
+    private static class Task{
+        final Runnable task;
+        final long time;
+        Task(Runnable task, long time) {
+            this.task = task;
+            this.time = time;
+        }
+    }
+}
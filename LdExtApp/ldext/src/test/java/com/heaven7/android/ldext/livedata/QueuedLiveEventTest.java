@@ -0,0 +1,106 @@
+package com.heaven7.android.ldext.livedata;
+
+import com.heaven7.android.ldext.MainLooperRule;
+import com.heaven7.android.ldext.TestObserver;
+
+import org.junit.Rule;
+import org.junit.Test;
+
+import java.util.Arrays;
+
+import static org.junit.Assert.assertEquals;
+
+public class QueuedLiveEventTest {
+
+    @Rule
+    public MainLooperRule mLooper = new MainLooperRule();
+
+    private final TestObserver<Integer> mObserver = new TestObserver<>();
+
+    @Test
+    public void testQueueWithoutObserver(){
+        QueuedLiveEvent<Integer> event = new QueuedLiveEvent<>(10, QueuedLiveEvent.OverflowPolicy.DROP_OLDEST);
+        event.setValue(1);
+        event.setValue(2);
+        event.postValue(3);
+        mLooper.runAll();
+        assertEquals(3, event.getQueuedCount());
+
+        event.observeForever(mObserver);
+        assertEquals(Arrays.asList(1, 2, 3), mObserver.values());
+        assertEquals(0, event.getQueuedCount());
+    }
+
+    @Test
+    public void testPostNeverConflate(){
+        QueuedLiveEvent<Integer> event = new QueuedLiveEvent<>(10, QueuedLiveEvent.OverflowPolicy.DROP_OLDEST);
+        event.observeForever(mObserver);
+        event.postValue(1);
+        event.postValue(2);
+        event.postValue(3);
+        assertEquals(1, mLooper.getPendingCount());
+
+        mLooper.runAll();
+        assertEquals(Arrays.asList(1, 2, 3), mObserver.values());
+    }
+
+    @Test
+    public void testDeliverOnceAcrossObservers(){
+        QueuedLiveEvent<Integer> event = new QueuedLiveEvent<>(10, QueuedLiveEvent.OverflowPolicy.DROP_OLDEST);
+        event.observeForever(mObserver);
+        event.setValue(1);
+        event.removeObserver(mObserver);
+
+        event.setValue(2);
+        TestObserver<Integer> observer = new TestObserver<>();
+        event.observeForever(observer);
+        assertEquals(Arrays.asList(1), mObserver.values());
+        assertEquals(Arrays.asList(2), observer.values());
+    }
+
+    @Test
+    public void testDropOldest(){
+        QueuedLiveEvent<Integer> event = new QueuedLiveEvent<>(2, QueuedLiveEvent.OverflowPolicy.DROP_OLDEST);
+        event.setValue(1);
+        event.setValue(2);
+        event.setValue(3);
+        event.observeForever(mObserver);
+        assertEquals(Arrays.asList(2, 3), mObserver.values());
+    }
+
+    @Test
+    public void testDropNewest(){
+        QueuedLiveEvent<Integer> event = new QueuedLiveEvent<>(2, QueuedLiveEvent.OverflowPolicy.DROP_NEWEST);
+        event.setValue(1);
+        event.setValue(2);
+        event.setValue(3);
+        event.observeForever(mObserver);
+        assertEquals(Arrays.asList(1, 2), mObserver.values());
+    }
+
+    @Test
+    public void testLatestOnly(){
+        QueuedLiveEvent<Integer> event = new QueuedLiveEvent<>(10, QueuedLiveEvent.OverflowPolicy.LATEST_ONLY);
+        event.setValue(1);
+        event.setValue(2);
+        event.setValue(3);
+        assertEquals(1, event.getQueuedCount());
+        event.observeForever(mObserver);
+        assertEquals(Arrays.asList(3), mObserver.values());
+    }
+
+    @Test
+    public void testClearQueue(){
+        QueuedLiveEvent<Integer> event = new QueuedLiveEvent<>(10, QueuedLiveEvent.OverflowPolicy.DROP_OLDEST);
+        event.setValue(1);
+        event.clearQueue();
+        event.setValue(2);
+        event.observeForever(mObserver);
+        assertEquals(Arrays.asList(2), mObserver.values());
+    }
+
+    @Test(expected = IllegalArgumentException.class)
+    public void testIllegalCapacity(){
+        new QueuedLiveEvent<Integer>(0, QueuedLiveEvent.OverflowPolicy.DROP_OLDEST);
+    }
+}
@@ -0,0 +1,201 @@
+package com.heaven7.android.ldext.livedata;
+
+import androidx.arch.core.util.Function;
+import androidx.lifecycle.MutableLiveData;
+
+import com.heaven7.android.ldext.MainLooperRule;
+import com.heaven7.android.ldext.TestObserver;
+import com.heaven7.android.ldext.TestScheduler;
+
+import org.junit.Before;
+import org.junit.Rule;
+import org.junit.Test;
+
+import java.util.ArrayList;
+import java.util.Arrays;
+import java.util.List;
+
+import static org.junit.Assert.assertEquals;
+import static org.junit.Assert.assertNotSame;
+
+public class SingleSourceLiveDataTest {
+
+    @Rule
+    public MainLooperRule mLooper = new MainLooperRule();
+
+    private final TestScheduler mScheduler = new TestScheduler().setQueueImmediate(true);
+    private final TestObserver<String> mObserver = new TestObserver<>();
+    private final MutableLiveData<Integer> mSource = new MutableLiveData<>();
+    private final MapFunction mFunc = new MapFunction("v");
+    private SingleSourceLiveData<Integer, String> mData;
+
+    @Before
+    public void setUp(){
+        mData = new SingleSourceLiveData<>();
+        mData.setMapFunction(mFunc);
+        mData.setSource(mSource);
+        mData.observeForever(mObserver);
+    }
+
+    @Test
+    public void testSyncMapping(){
+        mSource.setValue(1);
+        mSource.setValue(2);
+        assertEquals(Arrays.asList("v1", "v2"), mObserver.values());
+        assertEquals(0, mLooper.getPendingCount());
+    }
+
+    @Test
+    public void testAsyncLatestInputWins(){
+        mData.setScheduler(mScheduler);
+        mSource.setValue(1);
+        mSource.setValue(2);
+        //the in-flight mapping is cancelled.
+        assertEquals(1, mScheduler.getPendingCount());
+
+        mScheduler.triggerActions();
+        assertEquals(0, mObserver.count());
+        mLooper.runAll();
+        assertEquals(Arrays.asList("v2"), mObserver.values());
+        assertEquals(Arrays.asList(2), mFunc.inputs);
+    }
+
+    @Test
+    public void testAsyncDropMappedResultOfOldInput(){
+        mData.setScheduler(mScheduler);
+        mSource.setValue(1);
+        mScheduler.triggerActions();
+        //mapped but not delivered.
+        assertEquals(1, mLooper.getPendingCount());
+
+        mSource.setValue(2);
+        mLooper.runAll();
+        assertEquals(0, mObserver.count());
+
+        mScheduler.triggerActions();
+        mLooper.runAll();
+        assertEquals(Arrays.asList("v2"), mObserver.values());
+    }
+
+    @Test
+    public void testAsyncDropInFlightWhenSourceChanged(){
+        mData.setScheduler(mScheduler);
+        mSource.setValue(1);
+
+        MutableLiveData<Integer> source = new MutableLiveData<>();
+        mData.setSource(source);
+        assertEquals(0, mScheduler.getPendingCount());
+
+        source.setValue(3);
+        mScheduler.triggerActions();
+        mLooper.runAll();
+        assertEquals(Arrays.asList("v3"), mObserver.values());
+        assertEquals(Arrays.asList(3), mFunc.inputs);
+    }
+
+    @Test
+    public void testMemoSwitchBackSource(){
+        mData.setMemoization(10, 10, null, false);
+        mSource.setValue(1);
+        MutableLiveData<Integer> other = new MutableLiveData<>();
+        mData.setSource(other);
+        other.setValue(5);
+
+        mData.setSource(mSource);
+        assertEquals(Arrays.asList("v1", "v5", "v1"), mObserver.values());
+        assertEquals(Arrays.asList(1, 5), mFunc.inputs);
+    }
+
+    @Test
+    public void testMemoByIdentity(){
+        mData.setMemoization(10, 10, null, false);
+        Integer first = Integer.valueOf(1000);
+        Integer second = Integer.valueOf(1000);
+        assertNotSame(first, second);
+        mSource.setValue(first);
+        mSource.setValue(2);
+        mSource.setValue(second);
+        assertEquals(Arrays.asList(1000, 2, 1000), mFunc.inputs);
+
+        mSource.setValue(2);
+        assertEquals(Arrays.asList(1000, 2, 1000), mFunc.inputs);
+    }
+
+    @Test
+    public void testMemoByEquality(){
+        mData.setMemoization(10, 10, null, true);
+        mSource.setValue(Integer.valueOf(1000));
+        mSource.setValue(2);
+        mSource.setValue(Integer.valueOf(1000));
+        assertEquals(Arrays.asList("v1000", "v2", "v1000"), mObserver.values());
+        assertEquals(Arrays.asList(1000, 2), mFunc.inputs);
+    }
+
+    @Test
+    public void testMemoNullNotCached(){
+        mData.setMemoization(10, 10, null, true);
+        mSource.setValue(null);
+        mSource.setValue(2);
+        mSource.setValue(null);
+        assertEquals(Arrays.asList(null, 2, null), mFunc.inputs);
+    }
+
+    @Test
+    public void testMemoAsyncResult(){
+        mData.setMemoization(10, 10, null, false);
+        mData.setScheduler(mScheduler);
+        mSource.setValue(1);
+        mScheduler.triggerActions();
+        mLooper.runAll();
+        mSource.setValue(2);
+        mScheduler.triggerActions();
+        mLooper.runAll();
+
+        //the cached result is emitted directly.
+        mSource.setValue(1);
+        assertEquals(0, mScheduler.getPendingCount());
+        assertEquals(Arrays.asList("v1", "v2", "v1"), mObserver.values());
+        assertEquals(Arrays.asList(1, 2), mFunc.inputs);
+    }
+
+    @Test
+    public void testSetMapFunctionClearMemo(){
+        mData.setMemoization(10, 10, null, false);
+        mSource.setValue(1);
+        MutableLiveData<Integer> other = new MutableLiveData<>();
+        mData.setSource(other);
+        other.setValue(5);
+
+        MapFunction func = new MapFunction("w");
+        mData.setMapFunction(func);
+        mData.setSource(mSource);
+        assertEquals(Arrays.asList("v1", "v5", "w1"), mObserver.values());
+        assertEquals(Arrays.asList(1), func.inputs);
+    }
+
+    @Test
+    public void testSetMapFunctionDropInFlight(){
+        mData.setScheduler(mScheduler);
+        mSource.setValue(1);
+        mScheduler.triggerActions();
+
+        mData.setMapFunction(new MapFunction("w"));
+        assertEquals(0, mScheduler.getPendingCount());
+        mLooper.runAll();
+        assertEquals(0, mObserver.count());
+    }
+
+    private static class MapFunction implements Function<Integer, String>{
+        final List<Integer> inputs = new ArrayList<>();
+        private final String prefix;
+
+        MapFunction(String prefix) {
+            this.prefix = prefix;
+        }
+        @Override
+        public String apply(Integer input) {
+            inputs.add(input);
+            return prefix + input;
+        }
+    }
+}
@@ -0,0 +1,82 @@
+package com.heaven7.android.ldext.model;
+
+import org.junit.Test;
+
+import static org.junit.Assert.assertEquals;
+import static org.junit.Assert.assertFalse;
+import static org.junit.Assert.assertNotSame;
+import static org.junit.Assert.assertSame;
+import static org.junit.Assert.assertTrue;
+
+public class ResourceTest {
+
+    @Test
+    public void testWithSeqCopy(){
+        Resource<String> res = Resource.success("a");
+        Resource<String> stamped = res.withSeq(3);
+        assertNotSame(res, stamped);
+        assertEquals(3, stamped.seq);
+        assertEquals(0, res.seq);
+        assertSame(stamped, stamped.withSeq(3));
+        //the seq is not a part of equals.
+        assertEquals(res, stamped);
+    }
+
+    @Test
+    public void testSharedStateNeverStamped(){
+        //the shared states are reused without copy.
+        Resource<String> loading = Resource.loading(null);
+        assertSame(loading, loading.withSeq(5));
+        assertEquals(0, loading.seq);
+
+        Resource<String> error = Resource.error((String) null);
+        assertSame(error, error.withSeq(2));
+        assertEquals(0, error.seq);
+
+        Resource<String> loadingWithData = Resource.loading("a");
+        assertEquals(5, loadingWithData.withSeq(5).seq);
+    }
+
+    @Test
+    public void testIsNewerThan(){
+        Resource<String> old = Resource.success("a").withSeq(1);
+        Resource<String> now = Resource.success("a").withSeq(2);
+        assertTrue(now.isNewerThan(old));
+        assertFalse(old.isNewerThan(now));
+        assertFalse(now.isNewerThan(now));
+        assertTrue(old.isNewerThan(null));
+    }
+
+    @Test
+    public void testLoadingAttempt(){
+        assertSame(Resource.loading(null), Resource.loading(null, 1));
+        Resource<String> retry = Resource.loading("a", 2);
+        assertEquals(Status.LOADING, retry.status);
+        assertEquals(2, retry.attempt);
+    }
+
+    @Test
+    public void testTimeout(){
+        Resource<String> res = Resource.timeout("last");
+        assertEquals(Status.ERROR, res.status);
+        assertEquals(Resource.CODE_TIMEOUT, res.code);
+        assertEquals("last", res.data);
+    }
+
+    @Test
+    public void testContentHashCached(){
+        final int[] count = new int[1];
+        Object data = new Object(){
+            @Override
+            public int hashCode() {
+                count[0] ++;
+                return 42;
+            }
+        };
+        Resource<Object> res = Resource.success(data);
+        assertEquals(42, res.contentHash());
+        assertEquals(42, res.contentHash());
+        assertEquals(1, count[0]);
+        assertEquals(0, Resource.success(null).contentHash());
+    }
+}
@@ -0,0 +1,160 @@
+package com.heaven7.android.ldext.res;
+
+import androidx.arch.core.executor.testing.InstantTaskExecutorRule;
+
+import com.heaven7.android.ldext.TestScheduler;
+import com.heaven7.java.base.util.Disposable;
+
+import org.junit.Rule;
+import org.junit.Test;
+
+import java.util.concurrent.TimeUnit;
+import java.util.concurrent.atomic.AtomicInteger;
+
+import static org.junit.Assert.assertEquals;
+import static org.junit.Assert.assertFalse;
+import static org.junit.Assert.assertTrue;
+
+public class CancelGroupTest {
+
+    @Rule
+    public InstantTaskExecutorRule mRule = new InstantTaskExecutorRule();
+
+    private final TestScheduler mScheduler = new TestScheduler().setQueueImmediate(true);
+    private final CancelGroup mGroup = new CancelGroup();
+
+    @Test
+    public void testTaskRemovedWhenRun(){
+        Counter counter = new Counter();
+        mGroup.schedule(mScheduler.newWorker(), counter);
+        assertEquals(1, mGroup.getActiveCount());
+
+        mScheduler.triggerActions();
+        assertEquals(1, counter.get());
+        assertEquals(0, mGroup.getActiveCount());
+    }
+
+    @Test
+    public void testCancelTasksAndChildren(){
+        Counter counter = new Counter();
+        CancelGroup child = mGroup.newChild();
+        mGroup.scheduleDelay(mScheduler.newWorker(), counter, 10, TimeUnit.MILLISECONDS);
+        child.schedule(mScheduler.newWorker(), counter);
+
+        mGroup.cancel();
+        assertTrue(mGroup.isCancelled());
+        assertTrue(child.isCancelled());
+        assertEquals(0, mGroup.getActiveCount());
+        assertEquals(0, mScheduler.getPendingCount());
+
+        mScheduler.advanceBy(100);
+        assertEquals(0, counter.get());
+    }
+
+    @Test
+    public void testCancelledGroupRejectWork(){
+        mGroup.cancel();
+        Counter counter = new Counter();
+        mGroup.schedule(mScheduler.newWorker(), counter);
+        mScheduler.triggerActions();
+
+        assertEquals(0, counter.get());
+        assertEquals(0, mScheduler.getScheduledCount());
+        assertTrue(mGroup.newChild().isCancelled());
+        //the listener of cancelled group is called immediately.
+        mGroup.addCancelListener(counter);
+        assertEquals(1, counter.get());
+    }
+
+    @Test
+    public void testListenerCalledOnceOnCancel(){
+        Counter counter = new Counter();
+        mGroup.addCancelListener(counter);
+        mGroup.cancel();
+        mGroup.cancel();
+        assertEquals(1, counter.get());
+    }
+
+    @Test
+    public void testReleaseDropListenersWithoutCancel(){
+        Counter listener = new Counter();
+        Counter task = new Counter();
+        CancelGroup child = mGroup.newChild();
+        child.addCancelListener(listener);
+        child.schedule(mScheduler.newWorker(), task);
+
+        child.release();
+        assertFalse(child.isCancelled());
+        assertEquals(0, mGroup.getActiveCount());
+        assertEquals(0, mScheduler.getPendingCount());
+
+        //the later cancel of parent doesn't reach the released child.
+        mGroup.cancel();
+        assertFalse(child.isCancelled());
+        assertEquals(0, listener.get());
+        mScheduler.triggerActions();
+        assertEquals(0, task.get());
+
+        //the released group never becomes cancelled.
+        child.cancel();
+        assertFalse(child.isCancelled());
+    }
+
+    @Test
+    public void testChildRemovedFromParentWhenCancelled(){
+        CancelGroup child = mGroup.newChild();
+        assertEquals(1, mGroup.getActiveCount());
+        child.cancel();
+        assertEquals(0, mGroup.getActiveCount());
+        assertFalse(mGroup.isCancelled());
+    }
+
+    @Test
+    public void testDisposeTaskOnly(){
+        Counter counter = new Counter();
+        Disposable d = mGroup.scheduleDelay(mScheduler.newWorker(), counter, 10, TimeUnit.MILLISECONDS);
+        d.dispose();
+
+        assertEquals(0, mGroup.getActiveCount());
+        assertFalse(mGroup.isCancelled());
+        mScheduler.advanceBy(100);
+        assertEquals(0, counter.get());
+    }
+
+    @Test
+    public void testScheduleDelayOnMain(){
+        Counter counter = new Counter();
+        mGroup.scheduleDelayOnMain(mScheduler.newWorker(), counter, 10, TimeUnit.MILLISECONDS);
+
+        mScheduler.advanceBy(9);
+        assertEquals(0, counter.get());
+        mScheduler.advanceBy(1);
+        assertEquals(1, counter.get());
+        assertEquals(0, mGroup.getActiveCount());
+    }
+
+    @Test
+    public void testChildInheritDeadline(){
+        assertEquals(-1, mGroup.getRemainingTime());
+        mGroup.setTimeout(100);
+        CancelGroup child = mGroup.newChild();
+        assertEquals(100, child.getRemainingTime());
+
+        child.setTimeout(50);
+        assertEquals(50, child.getRemainingTime());
+        //never outlive the parent.
+        child.setTimeout(500);
+        assertEquals(100, child.getRemainingTime());
+    }
+
+    private static class Counter implements Runnable{
+        private final AtomicInteger mCount = new AtomicInteger();
+        @Override
+        public void run() {
+            mCount.incrementAndGet();
+        }
+        int get(){
+            return mCount.get();
+        }
+    }
+}
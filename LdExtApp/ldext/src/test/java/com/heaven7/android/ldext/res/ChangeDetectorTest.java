@@ -0,0 +1,115 @@
+package com.heaven7.android.ldext.res;
+
+import com.heaven7.android.ldext.model.Resource;
+
+import org.junit.Test;
+
+import java.util.Comparator;
+
+import static org.junit.Assert.assertEquals;
+import static org.junit.Assert.assertFalse;
+import static org.junit.Assert.assertTrue;
+
+public class ChangeDetectorTest {
+
+    @Test
+    public void testEquality(){
+        ChangeDetector<String> detector = ChangeDetector.equality();
+        assertTrue(detector.isSame(Resource.success(new String("a")), Resource.success(new String("a"))));
+        assertFalse(detector.isSame(Resource.success("a"), Resource.success("b")));
+        assertFalse(detector.isSame(Resource.success("a"), Resource.loading("a")));
+    }
+
+    @Test
+    public void testIdentity(){
+        ChangeDetector<String> detector = ChangeDetector.identity();
+        String data = "a";
+        assertTrue(detector.isSame(Resource.success(data), Resource.success(data)));
+        assertFalse(detector.isSame(Resource.success(new String("a")), Resource.success(new String("a"))));
+        assertFalse(detector.isSame(Resource.loading(data, 1), Resource.loading(data, 2)));
+    }
+
+    @Test
+    public void testVersion(){
+        ChangeDetector<Doc> detector = ChangeDetector.version();
+        assertTrue(detector.isSame(Resource.success(new Doc("a", 1)), Resource.success(new Doc("b", 1))));
+        assertFalse(detector.isSame(Resource.success(new Doc("a", 1)), Resource.success(new Doc("a", 2))));
+        assertFalse(detector.isSame(Resource.success(new Doc("a", 1)), Resource.<Doc>success(null)));
+    }
+
+    @Test
+    public void testContentHashConfirmCollision(){
+        ChangeDetector<Doc> detector = ChangeDetector.contentHash();
+        //the same hash, but not equal.
+        Resource<Doc> old = Resource.success(new Doc("a", 1));
+        Resource<Doc> now = Resource.success(new Doc("b", 1));
+        assertFalse(detector.isSame(old, now));
+        assertTrue(detector.isSame(old, Resource.success(new Doc("a", 1))));
+    }
+
+    @Test
+    public void testContentHashComputedOnce(){
+        ChangeDetector<Doc> detector = ChangeDetector.contentHash();
+        Doc doc = new Doc("a", 1);
+        Resource<Doc> old = Resource.success(doc);
+        Resource<Doc> now = Resource.success(new Doc("b", 2));
+        detector.isSame(old, now);
+        detector.isSame(old, now);
+        detector.isSame(old, now);
+        assertEquals(1, doc.hashCount);
+    }
+
+    @Test
+    public void testContentHashKeptByStampedCopy(){
+        ChangeDetector<Doc> detector = ChangeDetector.contentHash();
+        Doc doc = new Doc("a", 1);
+        Resource<Doc> old = Resource.success(doc);
+        Resource<Doc> now = Resource.success(new Doc("b", 2));
+        detector.isSame(old, now);
+
+        Resource<Doc> stamped = old.withSeq(1);
+        assertEquals(old.contentHash(), stamped.contentHash());
+        detector.isSame(stamped, now);
+        assertEquals(1, doc.hashCount);
+    }
+
+    @Test
+    public void testComparator(){
+        ChangeDetector<String> detector = ChangeDetector.comparator(String.CASE_INSENSITIVE_ORDER);
+        assertTrue(detector.isSame(Resource.success("a"), Resource.success("A")));
+        assertTrue(detector.isSame(Resource.<String>success(null), Resource.<String>success(null)));
+        //the comparator never see null.
+        ChangeDetector<String> strict = ChangeDetector.comparator(new Comparator<String>() {
+            @Override
+            public int compare(String o1, String o2) {
+                return o1.compareTo(o2);
+            }
+        });
+        assertFalse(strict.isSame(Resource.<String>success(null), Resource.success("a")));
+    }
+
+    //the hash only depends on the version. so the different content may collide.
+    private static class Doc implements ChangeDetector.Versioned{
+        final String content;
+        final long version;
+        int hashCount;
+
+        Doc(String content, long version) {
+            this.content = content;
+            this.version = version;
+        }
+        @Override
+        public long getVersion() {
+            return version;
+        }
+        @Override
+        public boolean equals(Object o) {
+            return o instanceof Doc && ((Doc) o).content.equals(content) && ((Doc) o).version == version;
+        }
+        @Override
+        public int hashCode() {
+            hashCount ++;
+            return (int) version;
+        }
+    }
+}
@@ -0,0 +1,401 @@
+package com.heaven7.android.ldext.res;
+
+import androidx.arch.core.executor.testing.InstantTaskExecutorRule;
+import androidx.lifecycle.LiveData;
+import androidx.lifecycle.MutableLiveData;
+
+import com.heaven7.android.ldext.TestObserver;
+import com.heaven7.android.ldext.TestScheduler;
+import com.heaven7.android.ldext.model.Resource;
+import com.heaven7.android.ldext.model.Status;
+import com.heaven7.java.base.util.Disposable;
+
+import org.junit.Before;
+import org.junit.Rule;
+import org.junit.Test;
+
+import java.util.ArrayList;
+import java.util.List;
+
+import static org.junit.Assert.assertEquals;
+import static org.junit.Assert.assertFalse;
+import static org.junit.Assert.assertTrue;
+
+public class DbNetworkResourceTest {
+
+    @Rule
+    public InstantTaskExecutorRule mRule = new InstantTaskExecutorRule();
+
+    private final TestScheduler mScheduler = new TestScheduler().setQueueImmediate(true);
+    private final TestObserver<Resource<String>> mObserver = new TestObserver<>();
+    private TestResource mResource;
+
+    @Before
+    public void setUp(){
+        mResource = new TestResource(mScheduler);
+        mResource.asLiveData().observeForever(mObserver);
+    }
+
+    @Test
+    public void testSerialFetchAfterDb(){
+        mResource.db = "old";
+        mResource.start();
+        assertEquals(0, mResource.networks.size());
+
+        mScheduler.triggerActions();
+        assertEquals(Status.LOADING, mObserver.last().status);
+        assertEquals("old", mObserver.last().data);
+        assertEquals(1, mResource.networks.size());
+
+        mResource.network().setValue(Resource.success("new"));
+        mScheduler.triggerActions();
+        assertEquals(Status.SUCCESS, mObserver.last().status);
+        assertEquals("new", mObserver.last().data);
+        assertEquals("new", mResource.db);
+    }
+
+    @Test
+    public void testParallelNetworkWinsDropFirstDbRead(){
+        mResource.db = "old";
+        mResource.setParallel(true);
+        mResource.start();
+        //the network starts before the db read.
+        assertEquals(1, mResource.networks.size());
+
+        mResource.network().setValue(Resource.success("new"));
+        mScheduler.triggerActions();
+
+        List<String> datas = new ArrayList<>();
+        for (Resource<String> res : mObserver.values()){
+            datas.add(res.status + ":" + res.data);
+        }
+        assertEquals("[LOADING:null, SUCCESS:new]", datas.toString());
+    }
+
+    @Test
+    public void testParallelDbWithoutFetchCancelNetwork(){
+        mResource.db = "cached";
+        mResource.fetch = false;
+        mResource.setParallel(true);
+        mResource.start();
+        TestNetwork network = mResource.network();
+
+        mScheduler.triggerActions();
+        assertEquals(Status.SUCCESS, mObserver.last().status);
+        assertEquals("cached", mObserver.last().data);
+        assertTrue(network.disposed);
+
+        //the late network result is dropped.
+        int count = mObserver.count();
+        network.setValue(Resource.success("late"));
+        mScheduler.triggerActions();
+        assertEquals(count, mObserver.count());
+        assertEquals("cached", mResource.db);
+    }
+
+    @Test
+    public void testParallelNetworkFailedWaitDb(){
+        mResource.db = "old";
+        mResource.setParallel(true);
+        mResource.start();
+
+        mResource.network().setValue(Resource.<String>error(500, "failed"));
+        assertEquals(Status.LOADING, mObserver.last().status);
+
+        mScheduler.triggerActions();
+        assertEquals(Status.ERROR, mObserver.last().status);
+        assertEquals("old", mObserver.last().data);
+    }
+
+    @Test
+    public void testParallelDbFirstThenNetwork(){
+        mResource.db = "old";
+        mResource.setParallel(true);
+        mResource.start();
+
+        mScheduler.triggerActions();
+        assertEquals(Status.LOADING, mObserver.last().status);
+        assertEquals("old", mObserver.last().data);
+
+        mResource.network().setValue(Resource.success("new"));
+        mScheduler.triggerActions();
+        assertEquals(Status.SUCCESS, mObserver.last().status);
+        assertEquals("new", mObserver.last().data);
+    }
+
+    @Test
+    public void testRetryWithBackoff(){
+        mResource.db = "old";
+        mResource.setRetryPolicy(new RetryPolicy.Builder()
+                .setMaxAttempts(2)
+                .setBaseDelay(100)
+                .setMaxDelay(100)
+                .build());
+        mResource.start();
+        mScheduler.triggerActions();
+
+        mResource.network().setValue(Resource.<String>error(503, "unavailable"));
+        assertEquals(Status.LOADING, mObserver.last().status);
+        assertEquals(2, mObserver.last().attempt);
+        assertEquals("old", mObserver.last().data);
+
+        mScheduler.advanceBy(100);
+        assertEquals(2, mResource.networks.size());
+        //the last attempt failed. no more retry.
+        mResource.network().setValue(Resource.<String>error(503, "unavailable"));
+        mScheduler.advanceBy(1000);
+        assertEquals(2, mResource.networks.size());
+        assertEquals(Status.ERROR, mObserver.last().status);
+        assertEquals("old", mObserver.last().data);
+    }
+
+    @Test
+    public void testRetrySucceed(){
+        mResource.setRetryPolicy(new RetryPolicy.Builder().setMaxDelay(100).build());
+        mResource.start();
+        mScheduler.triggerActions();
+
+        mResource.network().setValue(Resource.<String>error(503, "unavailable"));
+        mScheduler.advanceBy(100);
+        mResource.network().setValue(Resource.success("new"));
+        mScheduler.triggerActions();
+        assertEquals(Status.SUCCESS, mObserver.last().status);
+        assertEquals("new", mObserver.last().data);
+    }
+
+    @Test
+    public void testWriteBehindReloadAfterCommit(){
+        WriteBehindQueue queue = new WriteBehindQueue(mScheduler, 100, 10, null);
+        mResource.setWriteBehindQueue(queue);
+        mResource.start();
+        mScheduler.triggerActions();
+
+        mResource.network().setValue(Resource.success("new"));
+        mScheduler.triggerActions();
+        assertEquals(Status.LOADING, mObserver.last().status);
+
+        mScheduler.advanceBy(100);
+        assertEquals(Status.SUCCESS, mObserver.last().status);
+        assertEquals("new", mObserver.last().data);
+    }
+
+    @Test
+    public void testWriteBehindFailedKeepData(){
+        WriteBehindQueue queue = new WriteBehindQueue(mScheduler, 100, 10, new WriteBehindQueue.Committer() {
+            @Override
+            public void commit(List<WriteBehindQueue.PendingWrite<?>> writes) {
+                throw new IllegalStateException("rollback");
+            }
+        });
+        mResource.db = "old";
+        mResource.setWriteBehindQueue(queue);
+        mResource.start();
+        mScheduler.triggerActions();
+
+        mResource.network().setValue(Resource.success("new"));
+        mScheduler.advanceBy(100);
+        assertEquals(Status.ERROR, mObserver.last().status);
+        assertEquals("old", mObserver.last().data);
+        assertEquals("old", mResource.db);
+    }
+
+    @Test
+    public void testCancelBeforeDbRead(){
+        mResource.start();
+        mResource.cancel();
+        mScheduler.triggerActions();
+
+        assertTrue(mResource.dbTokens.isEmpty());
+        assertEquals(0, mScheduler.getPendingCount());
+    }
+
+    @Test
+    public void testCancelReachSources(){
+        mResource.setParallel(true);
+        mResource.start();
+        mScheduler.triggerActions();
+        CancellationToken dbToken = mResource.dbTokens.get(0);
+        CancellationToken networkToken = mResource.tokens.get(0);
+
+        mResource.cancel();
+        //the db read is done. its token is released.
+        assertFalse(dbToken.isCancelled());
+        assertTrue(networkToken.isCancelled());
+        assertTrue(mResource.network().disposed);
+    }
+
+    @Test
+    public void testTimeoutKeepDbData(){
+        mResource.db = "old";
+        mResource.setTimeout(100);
+        mResource.start();
+        mScheduler.triggerActions();
+
+        mScheduler.advanceBy(100);
+        assertEquals(Status.ERROR, mObserver.last().status);
+        assertEquals(Resource.CODE_TIMEOUT, mObserver.last().code);
+        assertEquals("old", mObserver.last().data);
+        assertTrue(mResource.network().disposed);
+    }
+
+    @Test
+    public void testRateLimiterSkipFetch(){
+        mResource.db = "old";
+        mResource.key = "key";
+        mResource.setRateLimiter(new RateLimiter(60000));
+        mResource.start();
+        mScheduler.triggerActions();
+        mResource.network().setValue(Resource.success("new"));
+        mScheduler.triggerActions();
+
+        //fetched in the window. the db data is used.
+        mResource.start();
+        mScheduler.triggerActions();
+        assertEquals(1, mResource.networks.size());
+        assertEquals(Status.SUCCESS, mObserver.last().status);
+        assertEquals("new", mObserver.last().data);
+    }
+
+    @Test
+    public void testRateLimiterResetOnFailure(){
+        mResource.db = "old";
+        mResource.key = "key";
+        mResource.setRateLimiter(new RateLimiter(60000));
+        mResource.start();
+        mScheduler.triggerActions();
+        mResource.network().setValue(Resource.<String>error(500, "failed"));
+        mScheduler.triggerActions();
+
+        mResource.start();
+        mScheduler.triggerActions();
+        assertEquals(2, mResource.networks.size());
+    }
+
+    @Test
+    public void testRateLimiterResetOnCancelAndTimeout(){
+        mResource.db = "old";
+        mResource.key = "key";
+        mResource.setRateLimiter(new RateLimiter(60000));
+        mResource.start();
+        mScheduler.triggerActions();
+        mResource.cancel();
+
+        mResource.setTimeout(100);
+        mResource.start();
+        mScheduler.triggerActions();
+        assertEquals(2, mResource.networks.size());
+        mScheduler.advanceBy(100);
+        assertEquals(Resource.CODE_TIMEOUT, mObserver.last().code);
+
+        mResource.start();
+        mScheduler.triggerActions();
+        assertEquals(3, mResource.networks.size());
+    }
+
+    @Test
+    public void testRateLimiterNullDbAlwaysFetch(){
+        RateLimiter limiter = new RateLimiter(60000);
+        limiter.markFetched("key");
+        mResource.key = "key";
+        mResource.setRateLimiter(limiter);
+        mResource.start();
+        mScheduler.triggerActions();
+        assertEquals(1, mResource.networks.size());
+    }
+
+    @Test
+    public void testRateLimiterParallelNetworkWinsMarkKey(){
+        mResource.db = "old";
+        mResource.key = "key";
+        mResource.setParallel(true);
+        mResource.setRateLimiter(new RateLimiter(60000));
+        mResource.start();
+        mResource.network().setValue(Resource.success("new"));
+        mScheduler.triggerActions();
+        assertEquals("new", mObserver.last().data);
+
+        //fetched in the window. the db is loaded first and used.
+        mResource.start();
+        assertEquals(1, mResource.networks.size());
+        mScheduler.triggerActions();
+        assertEquals(1, mResource.networks.size());
+        assertEquals(Status.SUCCESS, mObserver.last().status);
+        assertEquals("new", mObserver.last().data);
+    }
+
+    @Test
+    public void testRateLimiterParallelDbWithoutFetchReset(){
+        RateLimiter limiter = new RateLimiter(60000);
+        mResource.db = "cached";
+        mResource.key = "key";
+        mResource.fetch = false;
+        mResource.setParallel(true);
+        mResource.setRateLimiter(limiter);
+        mResource.start();
+        mScheduler.triggerActions();
+        assertTrue(mResource.network().disposed);
+
+        //the cancelled network doesn't count.
+        assertTrue(limiter.shouldFetch("key"));
+    }
+
+    static class TestNetwork extends MutableLiveData<Resource<String>> implements Disposable{
+        boolean disposed;
+        @Override
+        public void dispose() {
+            disposed = true;
+        }
+    }
+
+    static class TestResource extends DbNetworkResource<String, String>{
+        final List<TestNetwork> networks = new ArrayList<>();
+        final List<CancellationToken> tokens = new ArrayList<>();
+        final List<CancellationToken> dbTokens = new ArrayList<>();
+        volatile String db;
+        boolean fetch = true;
+        Object key;
+
+        TestResource(TestScheduler scheduler) {
+            super(scheduler);
+        }
+        TestNetwork network(){
+            return networks.get(networks.size() - 1);
+        }
+        @Override
+        protected Object getRequestKey() {
+            return key;
+        }
+        @Override
+        protected boolean shouldFetch(String data) {
+            return fetch;
+        }
+        @Override
+        protected String loadFromDb() {
+            throw new UnsupportedOperationException();
+        }
+        @Override
+        protected String loadFromDb(CancellationToken token) {
+            dbTokens.add(token);
+            return db;
+        }
+        @Override
+        protected String map(String data) {
+            return data;
+        }
+        @Override
+        protected LiveData<Resource<String>> createNetwork() {
+            throw new UnsupportedOperationException();
+        }
+        @Override
+        protected LiveData<Resource<String>> createNetwork(CancellationToken token) {
+            TestNetwork network = new TestNetwork();
+            networks.add(network);
+            tokens.add(token);
+            return network;
+        }
+        @Override
+        protected void saveNetworkData(String data) {
+            db = data;
+        }
+    }
+}
@@ -0,0 +1,161 @@
+package com.heaven7.android.ldext.res;
+
+import com.heaven7.android.ldext.TestScheduler;
+
+import org.junit.Before;
+import org.junit.Rule;
+import org.junit.Test;
+import org.junit.rules.TemporaryFolder;
+
+import java.io.File;
+import java.io.RandomAccessFile;
+import java.nio.charset.Charset;
+
+import static org.junit.Assert.assertEquals;
+import static org.junit.Assert.assertNull;
+import static org.junit.Assert.assertTrue;
+
+public class DiskResourceCacheTest {
+
+    private static final DiskResourceCache.Codec<String> CODEC = new DiskResourceCache.Codec<String>() {
+        private final Charset mCharset = Charset.forName("UTF-8");
+        @Override
+        public byte[] encode(String data) {
+            return data.getBytes(mCharset);
+        }
+        @Override
+        public String decode(byte[] bytes) {
+            return new String(bytes, mCharset);
+        }
+    };
+
+    @Rule
+    public TemporaryFolder mFolder = new TemporaryFolder();
+
+    private final TestScheduler mScheduler = new TestScheduler();
+    private File mFile;
+
+    @Before
+    public void setUp(){
+        mFile = new File(mFolder.getRoot(), "cache/res.bin");
+    }
+
+    @Test
+    public void testGetNeverLoadIndex(){
+        DiskResourceCache cache = new DiskResourceCache(mFile, 1024);
+        cache.put("a", "1", CODEC);
+        cache.close();
+
+        DiskResourceCache reopened = new DiskResourceCache(mFile, 1024);
+        assertNull(reopened.get("a", CODEC));
+        reopened.preload(mScheduler);
+        assertEquals("1", reopened.get("a", CODEC));
+    }
+
+    @Test
+    public void testPutReplaceAndRemove(){
+        DiskResourceCache cache = new DiskResourceCache(mFile, 1024);
+        cache.put("a", "1", CODEC);
+        cache.put("b", "2", CODEC);
+        cache.put("a", "3", CODEC);
+        assertEquals("3", cache.get("a", CODEC));
+        assertEquals("2", cache.get("b", CODEC));
+
+        cache.remove("b");
+        assertNull(cache.get("b", CODEC));
+        cache.close();
+
+        //the latest record and the tombstone survive the reload.
+        DiskResourceCache reopened = new DiskResourceCache(mFile, 1024);
+        reopened.preload(mScheduler);
+        assertEquals("3", reopened.get("a", CODEC));
+        assertNull(reopened.get("b", CODEC));
+    }
+
+    @Test
+    public void testCompactKeepNewest(){
+        //every record is 8 + 2 + 10 bytes. and the header is 8 bytes.
+        DiskResourceCache cache = new DiskResourceCache(mFile, 100);
+        for (int i = 0; i < 6; i++) {
+            cache.put("k" + i, "0123456789", CODEC);
+        }
+        assertTrue(mFile.length() <= 100);
+        assertEquals("0123456789", cache.get("k5", CODEC));
+        assertNull(cache.get("k0", CODEC));
+    }
+
+    @Test
+    public void testDropBrokenTail() throws Exception{
+        DiskResourceCache cache = new DiskResourceCache(mFile, 1024);
+        cache.put("a", "1", CODEC);
+        cache.close();
+        //the end covers a torn record.
+        long valid;
+        RandomAccessFile raf = new RandomAccessFile(mFile, "rw");
+        try {
+            valid = raf.readLong();
+            raf.seek(valid);
+            raf.writeInt(100);
+            raf.seek(0);
+            raf.writeLong(valid + 4);
+        } finally {
+            raf.close();
+        }
+
+        DiskResourceCache reopened = new DiskResourceCache(mFile, 1024);
+        reopened.preload(mScheduler);
+        assertEquals("1", reopened.get("a", CODEC));
+        assertEquals(valid, readEnd());
+        reopened.put("b", "2", CODEC);
+        assertEquals("2", reopened.get("b", CODEC));
+        reopened.close();
+
+        reopened = new DiskResourceCache(mFile, 1024);
+        reopened.preload(mScheduler);
+        assertEquals("2", reopened.get("b", CODEC));
+    }
+
+    @Test
+    public void testRemapOnlyWhenOutgrown() throws Exception{
+        DiskResourceCache cache = new DiskResourceCache(mFile, 1 << 20);
+        String value = "0123456789012345678901234567890123456789";
+        //every record is 8 + 5 + 40 bytes. about 52k in total.
+        for (int i = 0; i < 1000; i++) {
+            cache.put("k" + (1000 + i), value, CODEC);
+        }
+        //the initial mapping of 4k. then it is doubled to 64k.
+        assertEquals(5, cache.getRemapCount());
+        for (int i = 0; i < 1000; i++) {
+            assertEquals(value, cache.get("k" + (1000 + i), CODEC));
+        }
+        assertEquals(8 + 1000 * 53, readEnd());
+    }
+
+    @Test
+    public void testCompactPublishNewEpoch(){
+        DiskResourceCache cache = new DiskResourceCache(mFile, 100);
+        for (int i = 0; i < 10; i++) {
+            cache.put("k" + i, "0123456789", CODEC);
+            assertEquals("0123456789", cache.get("k" + i, CODEC));
+        }
+        assertEquals("0123456789", cache.get("k8", CODEC));
+        assertNull(cache.get("k0", CODEC));
+    }
+
+    @Test
+    public void testCloseDropSnapshot(){
+        DiskResourceCache cache = new DiskResourceCache(mFile, 1024);
+        cache.put("a", "1", CODEC);
+        cache.close();
+        assertNull(cache.get("a", CODEC));
+    }
+
+    private long readEnd() throws Exception{
+        RandomAccessFile raf = new RandomAccessFile(mFile, "r");
+        try {
+            return raf.readLong();
+        } finally {
+            raf.close();
+        }
+    }
+}
@@ -0,0 +1,239 @@
+package com.heaven7.android.ldext.res;
+
+import androidx.arch.core.executor.testing.InstantTaskExecutorRule;
+import androidx.lifecycle.LiveData;
+import androidx.lifecycle.MutableLiveData;
+
+import com.heaven7.android.ldext.TestObserver;
+import com.heaven7.android.ldext.TestScheduler;
+import com.heaven7.android.ldext.model.Resource;
+import com.heaven7.android.ldext.model.Status;
+import com.heaven7.java.base.util.Disposable;
+
+import org.junit.Before;
+import org.junit.Rule;
+import org.junit.Test;
+
+import java.util.ArrayList;
+import java.util.List;
+
+import static org.junit.Assert.assertEquals;
+import static org.junit.Assert.assertFalse;
+import static org.junit.Assert.assertNull;
+import static org.junit.Assert.assertTrue;
+
+public class MultiSourceManagerTest {
+
+    @Rule
+    public InstantTaskExecutorRule mRule = new InstantTaskExecutorRule();
+
+    private final TestScheduler mScheduler = new TestScheduler();
+    private final TestObserver<Resource<String>> mObserver = new TestObserver<>();
+    private final TestCallback mCallback = new TestCallback();
+    private MultiSourceManager<String> mManager;
+    private TestSource mFirst;
+    private TestSource mSecond;
+
+    @Before
+    public void setUp(){
+        mFirst = new TestSource();
+        mSecond = new TestSource();
+        mManager = new MultiSourceManager<>(mScheduler, mCallback)
+                .addSourceDelegate(mFirst)
+                .addSourceDelegate(mSecond);
+        mManager.asLiveData().observeForever(mObserver);
+    }
+
+    @Test
+    public void testSequentialMoveOnAfterIgnoredError(){
+        mManager.start();
+        assertEquals(Status.LOADING, mObserver.last().status);
+        assertEquals(1, mFirst.created);
+        assertEquals(0, mSecond.created);
+
+        mFirst.source.setValue(Resource.<String>error(404, "not found"));
+        assertEquals(1, mSecond.created);
+
+        mSecond.source.setValue(Resource.success("b"));
+        assertEquals(Status.SUCCESS, mObserver.last().status);
+        assertEquals("b", mObserver.last().data);
+        assertEquals("[b]", mCallback.saved.toString());
+    }
+
+    @Test
+    public void testAllSourcesFailed(){
+        mManager.start();
+        mFirst.source.setValue(Resource.<String>error(404, "not found"));
+        mSecond.source.setValue(Resource.<String>error(500, "failed"));
+
+        assertEquals(Status.ERROR, mObserver.last().status);
+        assertEquals(500, mObserver.last().code);
+        assertTrue(mCallback.saved.isEmpty());
+    }
+
+    @Test
+    public void testHedgedStartNextAfterDelay(){
+        mManager.setStrategy(MultiSourceManager.Strategy.HEDGED, 100);
+        mManager.start();
+        assertEquals(0, mSecond.created);
+
+        mScheduler.advanceBy(99);
+        assertEquals(0, mSecond.created);
+        mScheduler.advanceBy(1);
+        assertEquals(1, mSecond.created);
+
+        //the faster one wins. the slower one is cancelled.
+        mSecond.source.setValue(Resource.success("b"));
+        assertEquals("b", mObserver.last().data);
+        assertTrue(mFirst.source.disposed);
+        assertTrue(mFirst.token.isCancelled());
+        assertFalse(mSecond.token.isCancelled());
+
+        int count = mObserver.count();
+        mFirst.source.setValue(Resource.success("a"));
+        assertEquals(count, mObserver.count());
+    }
+
+    @Test
+    public void testHedgedWinBeforeDelay(){
+        mManager.setStrategy(MultiSourceManager.Strategy.HEDGED, 100);
+        mManager.start();
+        mFirst.source.setValue(Resource.success("a"));
+        mScheduler.advanceBy(1000);
+
+        assertEquals("a", mObserver.last().data);
+        assertEquals(0, mSecond.created);
+        assertEquals(0, mScheduler.getPendingCount());
+    }
+
+    @Test
+    public void testParallelStartAll(){
+        mManager.setStrategy(MultiSourceManager.Strategy.PARALLEL, 0);
+        mManager.start();
+        assertEquals(1, mFirst.created);
+        assertEquals(1, mSecond.created);
+
+        mFirst.source.setValue(Resource.<String>error(404, "not found"));
+        assertEquals(Status.LOADING, mObserver.last().status);
+        mSecond.source.setValue(Resource.success("b"));
+        assertEquals("b", mObserver.last().data);
+    }
+
+    @Test
+    public void testAsyncSource(){
+        mFirst.async = true;
+        mManager.start();
+        assertEquals(1, mFirst.created);
+
+        mFirst.source.setValue(Resource.success("a"));
+        assertEquals("a", mObserver.last().data);
+    }
+
+    @Test
+    public void testRestartDropOldGeneration(){
+        mManager.start();
+        TestSource.TestLiveData old = mFirst.source;
+        mManager.start();
+        assertTrue(old.disposed);
+
+        old.setValue(Resource.success("old"));
+        assertEquals(Status.LOADING, mObserver.last().status);
+        mFirst.source.setValue(Resource.success("new"));
+        assertEquals("new", mObserver.last().data);
+        assertEquals(2, mObserver.last().seq);
+    }
+
+    @Test
+    public void testNoSource(){
+        MultiSourceManager<String> manager = new MultiSourceManager<>(mScheduler, mCallback);
+        TestObserver<Resource<String>> observer = new TestObserver<>();
+        manager.asLiveData().observeForever(observer);
+        manager.start();
+
+        assertEquals(Status.ERROR, observer.last().status);
+        assertNull(observer.last().data);
+    }
+
+    @Test
+    public void testSourceTimeoutMoveOn(){
+        mFirst.timeout = 50;
+        mManager.start();
+        mScheduler.advanceBy(50);
+
+        assertTrue(mFirst.token.isCancelled());
+        assertEquals(1, mSecond.created);
+        mSecond.source.setValue(Resource.success("b"));
+        assertEquals("b", mObserver.last().data);
+    }
+
+    @Test
+    public void testWholeTimeout(){
+        mManager.setTimeout(100);
+        mManager.start();
+        mScheduler.advanceBy(100);
+
+        assertEquals(Status.ERROR, mObserver.last().status);
+        assertEquals(Resource.CODE_TIMEOUT, mObserver.last().code);
+        assertTrue(mFirst.token.isCancelled());
+        assertTrue(mFirst.source.disposed);
+    }
+
+    @Test
+    public void testWinDisposeTimeout(){
+        mManager.setTimeout(100);
+        mManager.start();
+        mFirst.source.setValue(Resource.success("a"));
+
+        assertEquals(0, mScheduler.getPendingCount());
+        mScheduler.advanceBy(1000);
+        assertEquals(Status.SUCCESS, mObserver.last().status);
+    }
+
+    static class TestSource extends MultiSourceManager.SourceDelegate<String>{
+        TestLiveData source;
+        CancellationToken token;
+        boolean async;
+        long timeout;
+        int created;
+
+        @Override
+        public boolean shouldAsync() {
+            return async;
+        }
+        @Override
+        public long getTimeout() {
+            return timeout;
+        }
+        @Override
+        public LiveData<Resource<String>> getSource() {
+            throw new UnsupportedOperationException();
+        }
+        @Override
+        public LiveData<Resource<String>> getSource(CancellationToken token) {
+            this.created ++;
+            this.token = token;
+            this.source = new TestLiveData();
+            return source;
+        }
+
+        static class TestLiveData extends MutableLiveData<Resource<String>> implements Disposable{
+            boolean disposed;
+            @Override
+            public void dispose() {
+                disposed = true;
+            }
+        }
+    }
+
+    static class TestCallback extends MultiSourceManager.Callback<String>{
+        final List<String> saved = new ArrayList<>();
+        @Override
+        public boolean shouldIgnoreError(int code, MultiSourceManager.SourceDelegate<String> sd) {
+            return true;
+        }
+        @Override
+        public void saveData(String data, MultiSourceManager.SourceDelegate<String> fromSource) {
+            saved.add(data);
+        }
+    }
+}
@@ -0,0 +1,251 @@
+package com.heaven7.android.ldext.res;
+
+import androidx.arch.core.executor.testing.InstantTaskExecutorRule;
+import androidx.lifecycle.LiveData;
+import androidx.lifecycle.MutableLiveData;
+
+import com.heaven7.android.ldext.TestObserver;
+import com.heaven7.android.ldext.TestScheduler;
+import com.heaven7.android.ldext.model.Resource;
+import com.heaven7.android.ldext.model.Status;
+import com.heaven7.java.base.util.Disposable;
+
+import org.junit.Before;
+import org.junit.Rule;
+import org.junit.Test;
+
+import java.util.ArrayList;
+import java.util.List;
+
+import static org.junit.Assert.assertEquals;
+import static org.junit.Assert.assertFalse;
+import static org.junit.Assert.assertSame;
+import static org.junit.Assert.assertTrue;
+
+public class NetworkResourceTest {
+
+    @Rule
+    public InstantTaskExecutorRule mRule = new InstantTaskExecutorRule();
+
+    private final TestScheduler mScheduler = new TestScheduler().setQueueImmediate(true);
+    private final TestObserver<Resource<String>> mObserver = new TestObserver<>();
+    private TestResource mResource;
+
+    @Before
+    public void setUp(){
+        mResource = new TestResource(mScheduler);
+        mResource.asLiveData().observeForever(mObserver);
+    }
+
+    @Test
+    public void testStampEveryGeneration(){
+        mResource.start();
+        //the shared loading is not stamped.
+        assertSame(Resource.loading(null), mObserver.last());
+        mResource.network().setValue(Resource.success("a"));
+        mScheduler.triggerActions();
+        assertEquals(Status.SUCCESS, mObserver.last().status);
+        assertEquals(1, mObserver.last().seq);
+
+        mResource.start();
+        assertSame(Resource.loading(null), mObserver.last());
+        //the same value of the newer generation is still emitted with the new seq.
+        mResource.network().setValue(Resource.success("a"));
+        mScheduler.triggerActions();
+        assertEquals(Status.SUCCESS, mObserver.last().status);
+        assertEquals(2, mObserver.last().seq);
+    }
+
+    @Test
+    public void testDedupInOneGeneration(){
+        mResource.start();
+        int count = mObserver.count();
+        mResource.network().setValue(Resource.<String>loading(null));
+        assertEquals(count, mObserver.count());
+    }
+
+    @Test
+    public void testDropSupersededSave(){
+        mResource.start();
+        mResource.network().setValue(Resource.success("old"));
+        //the save of the first generation is still queued.
+        mResource.start();
+        mScheduler.triggerActions();
+
+        for (Resource<String> res : mObserver.values()){
+            assertTrue(res.toString(), res.status != Status.SUCCESS);
+        }
+        assertEquals(Status.LOADING, mObserver.last().status);
+    }
+
+    @Test
+    public void testDropDetachedNetwork(){
+        mResource.start();
+        TestNetwork old = mResource.network();
+        mResource.start();
+        assertTrue(old.disposed);
+        assertTrue(mResource.tokens.get(0).isCancelled());
+
+        old.setValue(Resource.success("old"));
+        mScheduler.triggerActions();
+        assertEquals(Status.LOADING, mObserver.last().status);
+    }
+
+    @Test
+    public void testCancelReachSource(){
+        final int[] cancelled = new int[1];
+        mResource.start();
+        mResource.tokens.get(0).addCancelListener(new Runnable() {
+            @Override
+            public void run() {
+                cancelled[0] ++;
+            }
+        });
+        mResource.cancel();
+
+        assertEquals(1, cancelled[0]);
+        assertTrue(mResource.tokens.get(0).isCancelled());
+        assertTrue(mResource.network().disposed);
+    }
+
+    @Test
+    public void testDoneSourceDropListener(){
+        final int[] cancelled = new int[1];
+        mResource.start();
+        CancellationToken token = mResource.tokens.get(0);
+        token.addCancelListener(new Runnable() {
+            @Override
+            public void run() {
+                cancelled[0] ++;
+            }
+        });
+        mResource.network().setValue(Resource.success("a"));
+        mScheduler.triggerActions();
+        mResource.cancel();
+
+        //the work is done. the later cancel doesn't reach it.
+        assertEquals(0, cancelled[0]);
+        assertFalse(token.isCancelled());
+    }
+
+    @Test
+    public void testTimeout(){
+        mResource.setTimeout(100);
+        mResource.start();
+        mScheduler.advanceBy(99);
+        assertEquals(Status.LOADING, mObserver.last().status);
+
+        mScheduler.advanceBy(1);
+        assertEquals(Status.ERROR, mObserver.last().status);
+        assertEquals(Resource.CODE_TIMEOUT, mObserver.last().code);
+        assertTrue(mResource.tokens.get(0).isCancelled());
+        assertTrue(mResource.network().disposed);
+
+        //the late result is dropped.
+        int count = mObserver.count();
+        mResource.network().setValue(Resource.success("late"));
+        mScheduler.triggerActions();
+        assertEquals(count, mObserver.count());
+        assertTrue(mResource.saved.isEmpty());
+    }
+
+    @Test
+    public void testCompleteDisposeTimeout(){
+        mResource.setTimeout(100);
+        mResource.start();
+        mResource.network().setValue(Resource.success("a"));
+        mScheduler.triggerActions();
+
+        assertEquals(0, mScheduler.getPendingCount());
+        mScheduler.advanceBy(1000);
+        assertEquals(Status.SUCCESS, mObserver.last().status);
+    }
+
+    @Test
+    public void testRestartDropOldTimeout(){
+        mResource.setTimeout(100);
+        mResource.start();
+        mScheduler.advanceBy(50);
+        mResource.start();
+        mScheduler.advanceBy(50);
+        assertEquals(Status.LOADING, mObserver.last().status);
+
+        mScheduler.advanceBy(50);
+        assertEquals(Resource.CODE_TIMEOUT, mObserver.last().code);
+        assertEquals(2, mObserver.last().seq);
+    }
+
+    @Test
+    public void testSharedKeyOneSubscriberCancel(){
+        SingleFlight singleFlight = new SingleFlight();
+        mResource.key = "key";
+        mResource.setSingleFlight(singleFlight);
+        TestResource other = new TestResource(mScheduler);
+        other.key = "key";
+        other.setSingleFlight(singleFlight);
+        TestObserver<Resource<String>> otherObserver = new TestObserver<>();
+        other.asLiveData().observeForever(otherObserver);
+
+        mResource.start();
+        other.start();
+        //one network call for both.
+        assertEquals(1, mResource.networks.size());
+        assertEquals(0, other.networks.size());
+
+        //the repeated cancel releases the flight once.
+        other.cancel();
+        other.cancel();
+        TestNetwork network = mResource.network();
+        assertFalse(network.disposed);
+        assertFalse(mResource.tokens.get(0).isCancelled());
+
+        network.setValue(Resource.success("a"));
+        mScheduler.triggerActions();
+        assertEquals(Status.SUCCESS, mObserver.last().status);
+        assertEquals("a", mObserver.last().data);
+        assertEquals(Status.LOADING, otherObserver.last().status);
+        assertEquals(1, mResource.saved.size());
+        assertEquals(0, other.saved.size());
+    }
+
+    static class TestNetwork extends MutableLiveData<Resource<String>> implements Disposable{
+        boolean disposed;
+        @Override
+        public void dispose() {
+            disposed = true;
+        }
+    }
+
+    static class TestResource extends NetworkResource<String>{
+        final List<TestNetwork> networks = new ArrayList<>();
+        final List<CancellationToken> tokens = new ArrayList<>();
+        final List<String> saved = new ArrayList<>();
+        Object key;
+
+        TestResource(TestScheduler scheduler) {
+            super(scheduler);
+        }
+        TestNetwork network(){
+            return networks.get(networks.size() - 1);
+        }
+        @Override
+        protected Object getRequestKey() {
+            return key;
+        }
+        @Override
+        protected LiveData<Resource<String>> createNetwork() {
+            throw new UnsupportedOperationException();
+        }
+        @Override
+        protected LiveData<Resource<String>> createNetwork(CancellationToken token) {
+            TestNetwork network = new TestNetwork();
+            networks.add(network);
+            tokens.add(token);
+            return network;
+        }
+        @Override
+        protected void saveNetworkData(String data) {
+            saved.add(data);
+        }
+    }
+}
@@ -0,0 +1,206 @@
+package com.heaven7.android.ldext.res;
+
+import androidx.arch.core.executor.testing.InstantTaskExecutorRule;
+import androidx.lifecycle.LiveData;
+import androidx.lifecycle.MutableLiveData;
+
+import com.heaven7.android.ldext.TestObserver;
+import com.heaven7.android.ldext.model.Resource;
+import com.heaven7.android.ldext.model.Status;
+
+import org.junit.Before;
+import org.junit.Rule;
+import org.junit.Test;
+
+import java.util.ArrayList;
+import java.util.Iterator;
+import java.util.LinkedHashMap;
+import java.util.List;
+import java.util.Map;
+
+import static org.junit.Assert.assertEquals;
+import static org.junit.Assert.assertFalse;
+import static org.junit.Assert.assertNull;
+import static org.junit.Assert.assertTrue;
+
+public class PagedNetworkResourceTest {
+
+    private static final int PAGE_SIZE = 10;
+
+    @Rule
+    public InstantTaskExecutorRule mRule = new InstantTaskExecutorRule();
+
+    private final TestObserver<Resource<PagedNetworkResource.PageDelta<Integer>>> mObserver = new TestObserver<>();
+    private TestPagedResource mResource;
+
+    @Before
+    public void setUp(){
+        mResource = new TestPagedResource();
+        mResource.setPrefetchDistance(3);
+        mResource.asLiveData().observeForever(mObserver);
+    }
+
+    @Test
+    public void testFirstPage(){
+        mResource.start();
+        assertEquals(Status.LOADING, mObserver.last().status);
+        mResource.complete(0, 1);
+
+        PagedNetworkResource.PageDelta<Integer> delta = mObserver.last().data;
+        assertTrue(delta.refresh);
+        assertEquals(0, delta.offset);
+        assertEquals(PAGE_SIZE, delta.appended.size());
+        assertEquals(PAGE_SIZE, delta.loadedCount);
+        assertEquals(Integer.valueOf(5), mResource.getItem(5));
+    }
+
+    @Test
+    public void testPrefetchInDistance(){
+        mResource.start();
+        mResource.complete(0, 1);
+
+        mResource.getItem(6);
+        assertFalse(mResource.isLoading());
+        mResource.getItem(7);
+        assertTrue(mResource.isLoading());
+        //only one page is in flight.
+        mResource.getItem(9);
+        assertEquals(2, mResource.pages.size());
+
+        mResource.complete(1, null);
+        PagedNetworkResource.PageDelta<Integer> delta = mObserver.last().data;
+        assertFalse(delta.refresh);
+        assertEquals(10, delta.offset);
+        assertEquals(Integer.valueOf(10), delta.appended.get(0));
+        assertEquals(20, delta.loadedCount);
+        assertTrue(delta.end);
+        //no more page.
+        mResource.getItem(19);
+        assertFalse(mResource.isLoading());
+    }
+
+    @Test
+    public void testDropFarPages(){
+        mResource.setMaxPages(2);
+        mResource.start();
+        mResource.complete(0, 1);
+        mResource.getItem(9);
+        mResource.complete(1, 2);
+        mResource.getItem(19);
+        mResource.complete(2, 3);
+
+        PagedNetworkResource.PageDelta<Integer> delta = mObserver.last().data;
+        assertEquals(PAGE_SIZE, delta.droppedCount);
+        assertEquals(PAGE_SIZE, delta.startIndex);
+        assertEquals(2 * PAGE_SIZE, delta.loadedCount);
+        assertEquals(2, mResource.getPageCount());
+        assertEquals(Integer.valueOf(10), mResource.getPage(0).get(0));
+        assertNull(mResource.getItem(0));
+        assertEquals(Integer.valueOf(25), mResource.getItem(25));
+    }
+
+    @Test
+    public void testErrorKeepLoadedItems(){
+        mResource.start();
+        mResource.complete(0, 1);
+        mResource.getItem(9);
+        mResource.pages.get(1).setValue(Resource.<PagedNetworkResource.Page<Integer, Integer>>error(500, "failed"));
+
+        Resource<PagedNetworkResource.PageDelta<Integer>> last = mObserver.last();
+        assertEquals(Status.ERROR, last.status);
+        assertEquals(500, last.code);
+        assertTrue(last.data.appended.isEmpty());
+        assertEquals(0, last.data.startIndex);
+        assertEquals(PAGE_SIZE, last.data.loadedCount);
+        assertFalse(mResource.isLoading());
+    }
+
+    @Test
+    public void testPageLoadNeverCopyEarlierPages(){
+        mResource.start();
+        CountingList first = mResource.complete(0, 1);
+        mResource.getItem(9);
+        CountingList second = mResource.complete(1, null);
+
+        //the delta is the view of loaded page. the earlier page is not read in bulk.
+        assertEquals(0, first.bulkReads);
+        assertEquals(0, second.bulkReads);
+        PagedNetworkResource.PageDelta<Integer> delta = mObserver.last().data;
+        assertEquals(PAGE_SIZE, delta.appended.size());
+        second.set(0, -1);
+        assertEquals(Integer.valueOf(-1), delta.appended.get(0));
+    }
+
+    @Test(expected = UnsupportedOperationException.class)
+    public void testAppendedIsReadOnly(){
+        mResource.start();
+        mResource.complete(0, null);
+        mObserver.last().data.appended.clear();
+    }
+
+    @Test
+    public void testLateObserverRebuildFromPages(){
+        mResource.setMaxPages(2);
+        mResource.start();
+        mResource.complete(0, 1);
+        mResource.getItem(9);
+        mResource.complete(1, 2);
+        mResource.getItem(19);
+        mResource.complete(2, null);
+
+        TestObserver<Resource<PagedNetworkResource.PageDelta<Integer>>> late = new TestObserver<>();
+        mResource.asLiveData().observeForever(late);
+        PagedNetworkResource.PageDelta<Integer> delta = late.last().data;
+        List<Integer> rebuilt = new ArrayList<>();
+        for (int i = 0; i < mResource.getPageCount(); i++) {
+            rebuilt.addAll(mResource.getPage(i));
+        }
+        assertEquals(delta.loadedCount, rebuilt.size());
+        assertEquals(Integer.valueOf(delta.startIndex), rebuilt.get(0));
+        assertEquals(Integer.valueOf(29), rebuilt.get(rebuilt.size() - 1));
+    }
+
+    private static class TestPagedResource extends PagedNetworkResource<Integer, Integer>{
+        final Map<Integer, MutableLiveData<Resource<Page<Integer, Integer>>>> pages = new LinkedHashMap<>();
+
+        CountingList complete(int key, Integer nextKey){
+            CountingList items = new CountingList();
+            for (int i = 0; i < PAGE_SIZE; i++) {
+                items.add(key * PAGE_SIZE + i);
+            }
+            pages.get(key).setValue(Resource.success(new Page<Integer, Integer>(items, nextKey)));
+            return items;
+        }
+        @Override
+        protected Integer getInitialKey() {
+            return 0;
+        }
+        @Override
+        protected LiveData<Resource<Page<Integer, Integer>>> createPage(Integer key) {
+            MutableLiveData<Resource<Page<Integer, Integer>>> ld = new MutableLiveData<>();
+            pages.put(key, ld);
+            return ld;
+        }
+    }
+
+    //count the bulk reads. which are used to copy the list.
+    private static class CountingList extends ArrayList<Integer>{
+        int bulkReads;
+
+        @Override
+        public Object[] toArray() {
+            bulkReads ++;
+            return super.toArray();
+        }
+        @Override
+        public <E> E[] toArray(E[] a) {
+            bulkReads ++;
+            return super.toArray(a);
+        }
+        @Override
+        public Iterator<Integer> iterator() {
+            bulkReads ++;
+            return super.iterator();
+        }
+    }
+}
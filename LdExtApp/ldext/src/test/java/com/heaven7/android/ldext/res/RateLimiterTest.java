@@ -0,0 +1,171 @@
+package com.heaven7.android.ldext.res;
+
+import android.content.SharedPreferences;
+
+import org.junit.Test;
+
+import java.util.HashMap;
+import java.util.Map;
+import java.util.Set;
+
+import static org.junit.Assert.assertEquals;
+import static org.junit.Assert.assertFalse;
+import static org.junit.Assert.assertTrue;
+
+public class RateLimiterTest {
+
+    private final RateLimiter mLimiter = new RateLimiter(60000);
+
+    @Test
+    public void testOnlyFirstFetchInWindow(){
+        assertTrue(mLimiter.shouldFetch("key"));
+        assertFalse(mLimiter.shouldFetch("key"));
+        assertTrue(mLimiter.shouldFetch("other"));
+    }
+
+    @Test
+    public void testResetAllowFetch(){
+        assertTrue(mLimiter.shouldFetch("key"));
+        mLimiter.reset("key");
+        assertTrue(mLimiter.shouldFetch("key"));
+        assertFalse(mLimiter.shouldFetch("key"));
+    }
+
+    @Test
+    public void testMarkFetched(){
+        mLimiter.markFetched("key");
+        assertFalse(mLimiter.shouldFetch("key"));
+    }
+
+    @Test
+    public void testClear(){
+        mLimiter.markFetched("key");
+        mLimiter.markFetched("other");
+        mLimiter.clear();
+        assertTrue(mLimiter.shouldFetch("key"));
+        assertTrue(mLimiter.shouldFetch("other"));
+    }
+
+    @Test
+    public void testZeroWindowAlwaysFetch(){
+        RateLimiter limiter = new RateLimiter(0);
+        assertTrue(limiter.shouldFetch("key"));
+        assertTrue(limiter.shouldFetch("key"));
+    }
+
+    @Test
+    public void testPersistAcrossInstances(){
+        TestPrefs prefs = new TestPrefs();
+        new RateLimiter(60000, prefs).markFetched("key");
+        assertFalse(new RateLimiter(60000, prefs).shouldFetch("key"));
+    }
+
+    @Test
+    public void testClearKeepOtherPrefs(){
+        TestPrefs prefs = new TestPrefs();
+        prefs.edit().putLong("key", 1).apply();
+        RateLimiter limiter = new RateLimiter(60000, prefs);
+        limiter.markFetched("key");
+        limiter.clear();
+
+        assertEquals(1, prefs.getAll().size());
+        assertEquals(1, prefs.getLong("key", -1));
+        assertTrue(new RateLimiter(60000, prefs).shouldFetch("key"));
+    }
+
+    private static class TestPrefs implements SharedPreferences, SharedPreferences.Editor{
+        final Map<String, Object> values = new HashMap<>();
+
+        @Override
+        public Map<String, ?> getAll() {
+            return new HashMap<>(values);
+        }
+        @Override
+        public String getString(String key, String defValue) {
+            return values.containsKey(key) ? (String) values.get(key) : defValue;
+        }
+        @Override
+        @SuppressWarnings("unchecked")
+        public Set<String> getStringSet(String key, Set<String> defValues) {
+            return values.containsKey(key) ? (Set<String>) values.get(key) : defValues;
+        }
+        @Override
+        public int getInt(String key, int defValue) {
+            return values.containsKey(key) ? (Integer) values.get(key) : defValue;
+        }
+        @Override
+        public long getLong(String key, long defValue) {
+            return values.containsKey(key) ? (Long) values.get(key) : defValue;
+        }
+        @Override
+        public float getFloat(String key, float defValue) {
+            return values.containsKey(key) ? (Float) values.get(key) : defValue;
+        }
+        @Override
+        public boolean getBoolean(String key, boolean defValue) {
+            return values.containsKey(key) ? (Boolean) values.get(key) : defValue;
+        }
+        @Override
+        public boolean contains(String key) {
+            return values.containsKey(key);
+        }
+        //the edit is applied in place.
+        @Override
+        public Editor edit() {
+            return this;
+        }
+        @Override
+        public void registerOnSharedPreferenceChangeListener(OnSharedPreferenceChangeListener listener) {
+        }
+        @Override
+        public void unregisterOnSharedPreferenceChangeListener(OnSharedPreferenceChangeListener listener) {
+        }
+        @Override
+        public Editor putString(String key, String value) {
+            values.put(key, value);
+            return this;
+        }
+        @Override
+        public Editor putStringSet(String key, Set<String> values) {
+            this.values.put(key, values);
+            return this;
+        }
+        @Override
+        public Editor putInt(String key, int value) {
+            values.put(key, value);
+            return this;
+        }
+        @Override
+        public Editor putLong(String key, long value) {
+            values.put(key, value);
+            return this;
+        }
+        @Override
+        public Editor putFloat(String key, float value) {
+            values.put(key, value);
+            return this;
+        }
+        @Override
+        public Editor putBoolean(String key, boolean value) {
+            values.put(key, value);
+            return this;
+        }
+        @Override
+        public Editor remove(String key) {
+            values.remove(key);
+            return this;
+        }
+        @Override
+        public Editor clear() {
+            values.clear();
+            return this;
+        }
+        @Override
+        public boolean commit() {
+            return true;
+        }
+        @Override
+        public void apply() {
+        }
+    }
+}
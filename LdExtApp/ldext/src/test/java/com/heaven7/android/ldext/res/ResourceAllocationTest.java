@@ -0,0 +1,166 @@
+package com.heaven7.android.ldext.res;
+
+import androidx.arch.core.executor.testing.InstantTaskExecutorRule;
+import androidx.lifecycle.LiveData;
+import androidx.lifecycle.MediatorLiveData;
+import androidx.lifecycle.MutableLiveData;
+import androidx.lifecycle.Observer;
+
+import com.heaven7.android.ldext.TestObserver;
+import com.heaven7.android.ldext.TestScheduler;
+import com.heaven7.android.ldext.model.Resource;
+
+import org.junit.Assume;
+import org.junit.Before;
+import org.junit.Rule;
+import org.junit.Test;
+
+import java.lang.management.ManagementFactory;
+import java.lang.management.ThreadMXBean;
+
+import static org.junit.Assert.assertSame;
+import static org.junit.Assert.assertTrue;
+
+/**
+ * the allocation budget of the restart. the observers and tasks are reused, so a restart only allocate the per-generation
+ * state (the cancel group, the tokens and the emitted resources) and the source itself. the cost of the source and the
+ * live data internals (the payload) is measured by {@linkplain PayloadCycle}, the budget is the payload plus the
+ * per-generation state of the resource.
+ */
+public class ResourceAllocationTest {
+
+    /** the bytes of per-generation state: the cancel group with one entry set, the token, the scheduled tasks and
+     * the stamped resources. */
+    private static final long NETWORK_STATE_BUDGET = 768;
+    /** the network state plus the db task and the db-loaded resources */
+    private static final long DB_NETWORK_STATE_BUDGET = 1408;
+    private static final int WARM_UP = 2000;
+    private static final int CYCLES = 1000;
+
+    @Rule
+    public InstantTaskExecutorRule mRule = new InstantTaskExecutorRule();
+
+    private com.sun.management.ThreadMXBean mBean;
+
+    @Before
+    public void setUp(){
+        ThreadMXBean bean = ManagementFactory.getThreadMXBean();
+        Assume.assumeTrue(bean instanceof com.sun.management.ThreadMXBean);
+        mBean = (com.sun.management.ThreadMXBean) bean;
+        Assume.assumeTrue(mBean.isThreadAllocatedMemorySupported());
+        mBean.setThreadAllocatedMemoryEnabled(true);
+    }
+
+    @Test
+    public void testDataLessStatesAreShared(){
+        assertSame(Resource.loading(null), Resource.loading(null));
+        assertSame(Resource.error((Object) null), Resource.error((String) null));
+    }
+
+    @Test
+    public void testNetworkResourceRestart(){
+        assertBudget(new NetworkCycle(), NETWORK_STATE_BUDGET);
+    }
+
+    @Test
+    public void testDbNetworkResourceRestart(){
+        assertBudget(new DbNetworkCycle(), DB_NETWORK_STATE_BUDGET);
+    }
+
+    private void assertBudget(Runnable cycle, long stateBudget){
+        long payload = measure(new PayloadCycle());
+        long perCycle = measure(cycle);
+        assertTrue("allocated " + perCycle + " bytes per restart. payload = " + payload,
+                perCycle <= payload + stateBudget);
+    }
+    private long measure(Runnable cycle){
+        for (int i = 0; i < WARM_UP; i++) {
+            cycle.run();
+        }
+        final long tid = Thread.currentThread().getId();
+        long before = mBean.getThreadAllocatedBytes(tid);
+        for (int i = 0; i < CYCLES; i++) {
+            cycle.run();
+        }
+        return (mBean.getThreadAllocatedBytes(tid) - before) / CYCLES;
+    }
+
+    //the live data work of one cycle without the resource: a new source is attached, emits once and is detached.
+    private static class PayloadCycle implements Runnable, Observer<Resource<String>>{
+        final Resource<String> success = Resource.success("a");
+        final MediatorLiveData<Resource<String>> result = new MediatorLiveData<>();
+        final TestObserver<Resource<String>> observer = new TestObserver<>();
+
+        PayloadCycle() {
+            result.observeForever(observer);
+        }
+        @Override
+        public void run() {
+            observer.clear();
+            MutableLiveData<Resource<String>> network = new MutableLiveData<>();
+            result.postValue(Resource.<String>loading(null));
+            result.addSource(network, this);
+            network.setValue(success);
+            result.removeSource(network);
+        }
+        @Override
+        public void onChanged(Resource<String> res) {
+            result.postValue(res);
+        }
+    }
+
+    private static class NetworkCycle extends NetworkResource<String> implements Runnable{
+        final Resource<String> success = Resource.success("a");
+        final TestObserver<Resource<String>> observer = new TestObserver<>();
+        MutableLiveData<Resource<String>> network;
+
+        NetworkCycle() {
+            super(new TestScheduler());
+            asLiveData().observeForever(observer);
+        }
+        @Override
+        public void run() {
+            observer.clear();
+            start();
+            network.setValue(success);
+        }
+        @Override
+        protected LiveData<Resource<String>> createNetwork() {
+            network = new MutableLiveData<>();
+            return network;
+        }
+    }
+
+    private static class DbNetworkCycle extends DbNetworkResource<String, String> implements Runnable{
+        final Resource<String> success = Resource.success("a");
+        final TestObserver<Resource<String>> observer = new TestObserver<>();
+        MutableLiveData<Resource<String>> network;
+
+        DbNetworkCycle() {
+            super(new TestScheduler());
+            asLiveData().observeForever(observer);
+        }
+        @Override
+        public void run() {
+            observer.clear();
+            start();
+            network.setValue(success);
+        }
+        @Override
+        protected String loadFromDb() {
+            return "a";
+        }
+        @Override
+        protected String map(String data) {
+            return data;
+        }
+        @Override
+        protected LiveData<Resource<String>> createNetwork() {
+            network = new MutableLiveData<>();
+            return network;
+        }
+        @Override
+        protected void saveNetworkData(String data) {
+        }
+    }
+}
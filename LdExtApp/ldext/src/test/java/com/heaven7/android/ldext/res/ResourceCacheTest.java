@@ -0,0 +1,55 @@
+package com.heaven7.android.ldext.res;
+
+import com.heaven7.android.ldext.util.WeightedLruCache;
+
+import org.junit.Test;
+
+import static org.junit.Assert.assertEquals;
+import static org.junit.Assert.assertFalse;
+import static org.junit.Assert.assertNull;
+import static org.junit.Assert.assertTrue;
+
+public class ResourceCacheTest {
+
+    @Test
+    public void testFreshAndStaleEntry(){
+        ResourceCache cache = new ResourceCache(10, 100, null);
+        cache.put("fresh", "a", 60000);
+        cache.put("stale", "b", 0);
+
+        ResourceCache.Entry<String> fresh = cache.get("fresh");
+        assertEquals("a", fresh.data);
+        assertTrue(fresh.isFresh());
+        //the stale entry is still returned.
+        ResourceCache.Entry<String> stale = cache.get("stale");
+        assertEquals("b", stale.data);
+        assertFalse(stale.isFresh());
+    }
+
+    @Test
+    public void testInvalidateAndClear(){
+        ResourceCache cache = new ResourceCache(10, 100, null);
+        cache.put("a", "1", 1000);
+        cache.put("b", "2", 1000);
+
+        cache.invalidate("a");
+        assertNull(cache.get("a"));
+        cache.clear();
+        assertNull(cache.get("b"));
+    }
+
+    @Test
+    public void testWeigherSeeData(){
+        ResourceCache cache = new ResourceCache(10, 4, new WeightedLruCache.Weigher<Object, Object>() {
+            @Override
+            public int weigh(Object key, Object value) {
+                return ((String) value).length();
+            }
+        });
+        cache.put("a", "123", 1000);
+        cache.put("b", "12", 1000);
+
+        assertNull(cache.get("a"));
+        assertEquals("12", cache.<String>get("b").data);
+    }
+}
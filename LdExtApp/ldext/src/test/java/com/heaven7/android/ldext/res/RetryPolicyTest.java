@@ -0,0 +1,67 @@
+package com.heaven7.android.ldext.res;
+
+import org.junit.Test;
+
+import static org.junit.Assert.assertEquals;
+import static org.junit.Assert.assertFalse;
+import static org.junit.Assert.assertTrue;
+
+public class RetryPolicyTest {
+
+    @Test
+    public void testMaxAttemptsIncludeTheFirst(){
+        RetryPolicy policy = new RetryPolicy.Builder().setMaxAttempts(3).build();
+        assertTrue(policy.shouldRetry(1, 500));
+        assertTrue(policy.shouldRetry(2, 500));
+        assertFalse(policy.shouldRetry(3, 500));
+    }
+
+    @Test
+    public void testPredicate(){
+        RetryPolicy policy = new RetryPolicy.Builder()
+                .setPredicate(new RetryPolicy.CodePredicate() {
+                    @Override
+                    public boolean shouldRetry(int code) {
+                        return code >= 500;
+                    }
+                }).build();
+        assertTrue(policy.shouldRetry(1, 503));
+        assertFalse(policy.shouldRetry(1, 404));
+    }
+
+    @Test
+    public void testFullJitterInExponentialCap(){
+        RetryPolicy policy = new RetryPolicy.Builder()
+                .setBaseDelay(100)
+                .setMaxDelay(1000)
+                .build();
+        long max1 = 0;
+        long max4 = 0;
+        for (int i = 0; i < 2000; i++) {
+            long d1 = policy.getDelay(1);
+            long d4 = policy.getDelay(4);
+            long d20 = policy.getDelay(20);
+            assertTrue(d1 >= 0 && d1 <= 100);
+            assertTrue(d4 >= 0 && d4 <= 800);
+            assertTrue(d20 >= 0 && d20 <= 1000);
+            max1 = Math.max(max1, d1);
+            max4 = Math.max(max4, d4);
+        }
+        //the cap grows with the attempt.
+        assertTrue(max4 > 100);
+        assertTrue(max1 > 0);
+    }
+
+    @Test
+    public void testNoOverflow(){
+        RetryPolicy policy = new RetryPolicy.Builder()
+                .setBaseDelay(Long.MAX_VALUE / 2)
+                .setMaxDelay(1000)
+                .build();
+        for (int i = 0; i < 100; i++) {
+            long d = policy.getDelay(40);
+            assertTrue(d >= 0 && d <= 1000);
+        }
+        assertEquals(1000, policy.getMaxDelay());
+    }
+}
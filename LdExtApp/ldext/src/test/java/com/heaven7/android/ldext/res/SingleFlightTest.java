@@ -0,0 +1,142 @@
+package com.heaven7.android.ldext.res;
+
+import androidx.arch.core.executor.testing.InstantTaskExecutorRule;
+import androidx.lifecycle.LiveData;
+import androidx.lifecycle.MutableLiveData;
+
+import com.heaven7.android.ldext.TestObserver;
+import com.heaven7.android.ldext.TestScheduler;
+import com.heaven7.android.ldext.model.Resource;
+import com.heaven7.android.ldext.model.Status;
+
+import org.junit.Before;
+import org.junit.Rule;
+import org.junit.Test;
+
+import java.util.ArrayList;
+import java.util.List;
+
+import static org.junit.Assert.assertEquals;
+import static org.junit.Assert.assertFalse;
+import static org.junit.Assert.assertNotSame;
+import static org.junit.Assert.assertSame;
+import static org.junit.Assert.assertTrue;
+
+public class SingleFlightTest {
+
+    @Rule
+    public InstantTaskExecutorRule mRule = new InstantTaskExecutorRule();
+
+    private final SingleFlight mSingleFlight = new SingleFlight();
+    private final TestScheduler mScheduler = new TestScheduler();
+    private TestCall mCall;
+
+    @Before
+    public void setUp(){
+        mCall = new TestCall();
+    }
+
+    @Test
+    public void testJoinSameKeyShareOneCall(){
+        SingleFlight.Flight<String> first = mSingleFlight.join("key", mScheduler, mCall);
+        SingleFlight.Flight<String> second = mSingleFlight.join("key", mScheduler, mCall);
+
+        //one handle per subscriber. and one shared result.
+        assertNotSame(first, second);
+        assertSame(first.asLiveData(), second.asLiveData());
+        assertEquals(1, mCall.createCount);
+        assertTrue(mSingleFlight.isInFlight("key"));
+
+        mSingleFlight.join("other", mScheduler, mCall);
+        assertEquals(2, mCall.createCount);
+    }
+
+    @Test
+    public void testSuccessIsSavedThenShared(){
+        SingleFlight.Flight<String> flight = mSingleFlight.join("key", mScheduler, mCall);
+        TestObserver<Resource<String>> observer = new TestObserver<>();
+        flight.asLiveData().observeForever(observer);
+
+        mCall.network.setValue(Resource.<String>loading(null));
+        assertEquals(0, observer.count());
+
+        mCall.network.setValue(Resource.success("data"));
+        assertEquals(1, mCall.saved.size());
+        assertEquals("data", mCall.saved.get(0));
+        assertEquals(Status.SUCCESS, observer.last().status);
+        assertEquals("data", observer.last().data);
+        assertFalse(mSingleFlight.isInFlight("key"));
+        //the work is done. the later release doesn't cancel.
+        flight.release();
+        assertFalse(mCall.token.isCancelled());
+    }
+
+    @Test
+    public void testErrorIsSharedWithoutSave(){
+        SingleFlight.Flight<String> flight = mSingleFlight.join("key", mScheduler, mCall);
+        TestObserver<Resource<String>> observer = new TestObserver<>();
+        flight.asLiveData().observeForever(observer);
+
+        mCall.network.setValue(Resource.<String>error(500, "failed"));
+        assertTrue(mCall.saved.isEmpty());
+        assertEquals(Status.ERROR, observer.last().status);
+        assertEquals(500, observer.last().code);
+        assertFalse(mSingleFlight.isInFlight("key"));
+    }
+
+    @Test
+    public void testCancelOnlyWhenLastSubscriberRelease(){
+        SingleFlight.Flight<String> first = mSingleFlight.join("key", mScheduler, mCall);
+        SingleFlight.Flight<String> second = mSingleFlight.join("key", mScheduler, mCall);
+
+        first.release();
+        assertFalse(mCall.token.isCancelled());
+        assertTrue(mSingleFlight.isInFlight("key"));
+
+        second.release();
+        assertTrue(mCall.token.isCancelled());
+        assertFalse(mSingleFlight.isInFlight("key"));
+        //the extra release is ignored.
+        second.release();
+    }
+
+    @Test
+    public void testRepeatedReleaseOfOneHandleCountOnce(){
+        SingleFlight.Flight<String> first = mSingleFlight.join("key", mScheduler, mCall);
+        SingleFlight.Flight<String> second = mSingleFlight.join("key", mScheduler, mCall);
+
+        first.release();
+        first.release();
+        assertFalse(mCall.token.isCancelled());
+        assertTrue(mSingleFlight.isInFlight("key"));
+
+        second.release();
+        assertTrue(mCall.token.isCancelled());
+    }
+
+    @Test
+    public void testJoinAfterReleaseStartNewCall(){
+        mSingleFlight.join("key", mScheduler, mCall).release();
+        mSingleFlight.join("key", mScheduler, mCall);
+        assertEquals(2, mCall.createCount);
+    }
+
+    private static class TestCall implements SingleFlight.Call<String>{
+        final List<String> saved = new ArrayList<>();
+        MutableLiveData<Resource<String>> network;
+        CancellationToken token;
+        int createCount;
+
+        @Override
+        public LiveData<Resource<String>> createNetwork(CancellationToken token) {
+            this.createCount ++;
+            this.token = token;
+            this.network = new MutableLiveData<>();
+            return network;
+        }
+        @Override
+        public void saveNetworkData(String data) {
+            saved.add(data);
+        }
+    }
+}
@@ -0,0 +1,157 @@
+package com.heaven7.android.ldext.res;
+
+import androidx.arch.core.executor.testing.InstantTaskExecutorRule;
+
+import com.heaven7.android.ldext.TestObserver;
+import com.heaven7.android.ldext.TestScheduler;
+import com.heaven7.android.ldext.model.Resource;
+import com.heaven7.android.ldext.model.Status;
+
+import org.junit.Rule;
+import org.junit.Test;
+
+import java.io.IOException;
+import java.util.ArrayList;
+import java.util.Arrays;
+import java.util.List;
+
+import static org.junit.Assert.assertEquals;
+import static org.junit.Assert.assertTrue;
+
+public class StreamingResourceTest {
+
+    @Rule
+    public InstantTaskExecutorRule mRule = new InstantTaskExecutorRule();
+
+    private final TestScheduler mScheduler = new TestScheduler().setQueueImmediate(true);
+    private final TestObserver<Resource<StreamingResource.StreamProgress<String>>> mObserver = new TestObserver<>();
+
+    @Test
+    public void testEmitChunksProgressively(){
+        TestStreamingResource resource = new TestStreamingResource("a", "b", "c");
+        resource.asLiveData().observeForever(mObserver);
+        resource.start();
+        mScheduler.triggerActions();
+
+        Resource<StreamingResource.StreamProgress<String>> last = mObserver.last();
+        assertEquals(Status.SUCCESS, last.status);
+        assertEquals(3, last.data.bytesRead);
+        assertEquals(1f, last.data.getProgress(), 0f);
+        assertEquals(Arrays.asList("a", "b", "c"), collectChunks());
+        assertTrue(resource.completed);
+        assertTrue(resource.closed);
+    }
+
+    @Test
+    public void testPauseWhileInactive(){
+        TestStreamingResource resource = new TestStreamingResource("a", "b", "c");
+        resource.start();
+        mScheduler.triggerActions();
+        assertTrue(resource.completed);
+
+        //the chunks wait in the buffer, and are drained once active.
+        resource.asLiveData().observeForever(mObserver);
+        assertEquals(Status.SUCCESS, mObserver.last().status);
+        assertEquals(Arrays.asList("a", "b", "c"), collectChunks());
+    }
+
+    @Test
+    public void testSaveDirectly(){
+        TestStreamingResource resource = new TestStreamingResource("a", "b");
+        resource.setSaveDirectly(true);
+        resource.asLiveData().observeForever(mObserver);
+        resource.start();
+        mScheduler.triggerActions();
+
+        assertEquals(Arrays.asList("a", "b"), resource.saved);
+        assertTrue(collectChunks().isEmpty());
+        assertEquals(Status.SUCCESS, mObserver.last().status);
+        assertEquals(2, mObserver.last().data.bytesRead);
+    }
+
+    @Test
+    public void testReadFailedKeepDrainedChunks(){
+        TestStreamingResource resource = new TestStreamingResource("a", null);
+        resource.asLiveData().observeForever(mObserver);
+        resource.start();
+        mScheduler.triggerActions();
+
+        Resource<StreamingResource.StreamProgress<String>> last = mObserver.last();
+        assertEquals(Status.ERROR, last.status);
+        assertEquals("broken", last.message);
+        assertEquals(Arrays.asList("a"), collectChunks());
+        assertTrue(resource.closed);
+    }
+
+    @Test
+    public void testCancelBeforeRead(){
+        TestStreamingResource resource = new TestStreamingResource("a");
+        resource.asLiveData().observeForever(mObserver);
+        resource.start();
+        resource.cancel();
+        mScheduler.triggerActions();
+
+        assertEquals(Status.LOADING, mObserver.last().status);
+        assertEquals(0, mScheduler.getPendingCount());
+    }
+
+    private List<String> collectChunks(){
+        List<String> list = new ArrayList<>();
+        for (Resource<StreamingResource.StreamProgress<String>> res : mObserver.values()){
+            if(res.data != null){
+                list.addAll(res.data.chunks);
+            }
+        }
+        return list;
+    }
+
+    //the null chunk means the read failed.
+    private class TestStreamingResource extends StreamingResource<String>{
+        final List<String> saved = new ArrayList<>();
+        final String[] chunks;
+        volatile boolean completed;
+        volatile boolean closed;
+
+        TestStreamingResource(String... chunks) {
+            super(mScheduler, 16);
+            this.chunks = chunks;
+        }
+        @Override
+        protected ChunkSource<String> openStream() {
+            return new ChunkSource<String>() {
+                int index;
+                @Override
+                public String read() throws IOException {
+                    if(index >= chunks.length){
+                        return null;
+                    }
+                    String chunk = chunks[index++];
+                    if(chunk == null){
+                        throw new IOException("broken");
+                    }
+                    return chunk;
+                }
+                @Override
+                public long getBytesRead() {
+                    return index;
+                }
+                @Override
+                public long getContentLength() {
+                    return chunks.length;
+                }
+                @Override
+                public void close() {
+                    closed = true;
+                }
+            };
+        }
+        @Override
+        protected void saveNetworkData(String chunk) {
+            saved.add(chunk);
+        }
+        @Override
+        protected void onStreamComplete() {
+            completed = true;
+        }
+    }
+}
@@ -0,0 +1,131 @@
+package com.heaven7.android.ldext.res;
+
+import com.heaven7.android.ldext.TestScheduler;
+
+import org.junit.Test;
+
+import java.util.ArrayList;
+import java.util.List;
+
+import static org.junit.Assert.assertEquals;
+import static org.junit.Assert.assertTrue;
+
+public class WriteBehindQueueTest {
+
+    private final TestScheduler mScheduler = new TestScheduler().setQueueImmediate(true);
+    private final List<String> mEvents = new ArrayList<>();
+
+    @Test
+    public void testCommitInWindow(){
+        TestCommitter committer = new TestCommitter();
+        WriteBehindQueue queue = new WriteBehindQueue(mScheduler, 100, 10, committer);
+        queue.enqueue(new TestWrite("a"));
+        queue.enqueue(new TestWrite("b"));
+
+        mScheduler.advanceBy(99);
+        assertTrue(mEvents.isEmpty());
+        mScheduler.advanceBy(1);
+        assertEquals(1, committer.batches.size());
+        assertEquals("[save:a, save:b, committed:a, committed:b]", mEvents.toString());
+        //one flush task for the window.
+        assertEquals(1, mScheduler.getScheduledCount());
+    }
+
+    @Test
+    public void testCommitWhenBatchFull(){
+        TestCommitter committer = new TestCommitter();
+        WriteBehindQueue queue = new WriteBehindQueue(mScheduler, 100, 2, committer);
+        queue.enqueue(new TestWrite("a"));
+        queue.enqueue(new TestWrite("b"));
+
+        mScheduler.triggerActions();
+        assertEquals(1, committer.batches.size());
+        assertEquals(2, committer.batches.get(0).intValue());
+        //the window flush finds nothing.
+        mScheduler.advanceBy(100);
+        assertEquals(1, committer.batches.size());
+    }
+
+    @Test
+    public void testSizeFlushDisposeWindowTimer(){
+        TestCommitter committer = new TestCommitter();
+        WriteBehindQueue queue = new WriteBehindQueue(mScheduler, 100, 2, committer);
+        queue.enqueue(new TestWrite("a"));
+        mScheduler.advanceBy(50);
+        queue.enqueue(new TestWrite("b"));
+        mScheduler.triggerActions();
+        assertEquals(1, committer.batches.size());
+        //the timer of the ended window is disposed.
+        assertEquals(0, mScheduler.getPendingCount());
+
+        //the next write waits the whole window of its own.
+        queue.enqueue(new TestWrite("c"));
+        mScheduler.advanceBy(50);
+        assertEquals(1, committer.batches.size());
+        mScheduler.advanceBy(49);
+        assertEquals(1, committer.batches.size());
+        mScheduler.advanceBy(1);
+        assertEquals(2, committer.batches.size());
+        assertEquals(1, committer.batches.get(1).intValue());
+        assertEquals(0, mScheduler.getPendingCount());
+    }
+
+    @Test
+    public void testFailedBatchNotifyAll(){
+        TestCommitter committer = new TestCommitter();
+        committer.fail = true;
+        WriteBehindQueue queue = new WriteBehindQueue(mScheduler, 100, 10, committer);
+        queue.enqueue(new TestWrite("a"));
+        queue.enqueue(new TestWrite("b"));
+        queue.flush();
+
+        assertEquals("[save:a, save:b, failed:a, failed:b]", mEvents.toString());
+    }
+
+    @Test
+    public void testIndependentWritesWithoutCommitter(){
+        WriteBehindQueue queue = new WriteBehindQueue(mScheduler, 100, 10, null);
+        queue.enqueue(new TestWrite("a"));
+        queue.enqueue(new TestWrite("bad"));
+        queue.enqueue(new TestWrite("c"));
+        queue.flush();
+
+        assertEquals("[save:a, committed:a, failed:bad, save:c, committed:c]", mEvents.toString());
+    }
+
+    private class TestWrite extends WriteBehindQueue.PendingWrite<String>{
+        TestWrite(String data) {
+            super(data);
+        }
+        @Override
+        protected void save(String data) {
+            if(data.equals("bad")){
+                throw new IllegalStateException("bad");
+            }
+            mEvents.add("save:" + data);
+        }
+        @Override
+        protected void onCommitted() {
+            mEvents.add("committed:" + getData());
+        }
+        @Override
+        protected void onFailed(RuntimeException e) {
+            mEvents.add("failed:" + getData());
+        }
+    }
+
+    private static class TestCommitter implements WriteBehindQueue.Committer{
+        final List<Integer> batches = new ArrayList<>();
+        boolean fail;
+        @Override
+        public void commit(List<WriteBehindQueue.PendingWrite<?>> writes) {
+            batches.add(writes.size());
+            for (WriteBehindQueue.PendingWrite<?> write : writes){
+                write.apply();
+            }
+            if(fail){
+                throw new IllegalStateException("rollback");
+            }
+        }
+    }
+}
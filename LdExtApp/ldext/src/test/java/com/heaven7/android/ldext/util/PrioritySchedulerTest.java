@@ -0,0 +1,195 @@
+package com.heaven7.android.ldext.util;
+
+import com.heaven7.java.base.util.Disposable;
+
+import org.junit.After;
+import org.junit.Test;
+
+import java.util.ArrayList;
+import java.util.Collections;
+import java.util.List;
+import java.util.concurrent.CountDownLatch;
+import java.util.concurrent.TimeUnit;
+
+import static org.junit.Assert.assertEquals;
+import static org.junit.Assert.assertFalse;
+import static org.junit.Assert.assertSame;
+import static org.junit.Assert.assertTrue;
+
+public class PrioritySchedulerTest {
+
+    private static final long TIMEOUT = 5;
+
+    private final PriorityScheduler mScheduler = new PriorityScheduler(2);
+    private final List<String> mOrder = Collections.synchronizedList(new ArrayList<String>());
+
+    @After
+    public void tearDown(){
+        mScheduler.shutdown();
+    }
+
+    @Test
+    public void testWorkerIsCachedPerLane(){
+        assertSame(mScheduler.newWorker(PriorityScheduler.Priority.PREFETCH),
+                mScheduler.newWorker(PriorityScheduler.Priority.PREFETCH));
+        assertSame(mScheduler.newWorker(), mScheduler.newWorker(PriorityScheduler.Priority.VISIBLE));
+    }
+
+    @Test
+    public void testHighLaneRunFirst() throws Exception{
+        CountDownLatch gate1 = new CountDownLatch(1);
+        CountDownLatch gate2 = new CountDownLatch(1);
+        CountDownLatch started = new CountDownLatch(2);
+        CountDownLatch done = new CountDownLatch(3);
+        schedule(PriorityScheduler.Priority.VISIBLE, new Block(started, gate1));
+        schedule(PriorityScheduler.Priority.VISIBLE, new Block(started, gate2));
+        assertTrue(started.await(TIMEOUT, TimeUnit.SECONDS));
+
+        schedule(PriorityScheduler.Priority.BACKGROUND, new Record("background", done));
+        schedule(PriorityScheduler.Priority.VISIBLE, new Record("visible", done));
+        schedule(PriorityScheduler.Priority.IMMEDIATE, new Record("immediate", done));
+        //one thread drains the lanes.
+        gate1.countDown();
+        assertTrue(done.await(TIMEOUT, TimeUnit.SECONDS));
+        gate2.countDown();
+
+        assertEquals("[immediate, visible, background]", mOrder.toString());
+    }
+
+    @Test
+    public void testLowLaneNeverTakeLastThread() throws Exception{
+        CountDownLatch gate = new CountDownLatch(1);
+        CountDownLatch started = new CountDownLatch(1);
+        CountDownLatch secondLow = new CountDownLatch(1);
+        CountDownLatch visible = new CountDownLatch(1);
+        schedule(PriorityScheduler.Priority.BACKGROUND, new Block(started, gate));
+        assertTrue(started.await(TIMEOUT, TimeUnit.SECONDS));
+        schedule(PriorityScheduler.Priority.PREFETCH, new Record("prefetch", secondLow));
+        schedule(PriorityScheduler.Priority.VISIBLE, new Record("visible", visible));
+
+        assertTrue(visible.await(TIMEOUT, TimeUnit.SECONDS));
+        assertFalse(secondLow.await(100, TimeUnit.MILLISECONDS));
+        //the low lane runs once the thread is free.
+        gate.countDown();
+        assertTrue(secondLow.await(TIMEOUT, TimeUnit.SECONDS));
+    }
+
+    @Test
+    public void testFailedTaskKeepThread() throws Exception{
+        CountDownLatch done = new CountDownLatch(1);
+        for (int i = 0; i < 4; i++) {
+            schedule(PriorityScheduler.Priority.VISIBLE, new Runnable() {
+                @Override
+                public void run() {
+                    throw new IllegalStateException("failed");
+                }
+            });
+        }
+        schedule(PriorityScheduler.Priority.VISIBLE, new Record("after", done));
+        assertTrue(done.await(TIMEOUT, TimeUnit.SECONDS));
+    }
+
+    @Test
+    public void testErrorEndThreadAndReplaced() throws Exception{
+        final List<Throwable> uncaught = Collections.synchronizedList(new ArrayList<Throwable>());
+        final CountDownLatch died = new CountDownLatch(2);
+        Thread.UncaughtExceptionHandler old = Thread.getDefaultUncaughtExceptionHandler();
+        Thread.setDefaultUncaughtExceptionHandler(new Thread.UncaughtExceptionHandler() {
+            @Override
+            public void uncaughtException(Thread t, Throwable e) {
+                uncaught.add(e);
+                died.countDown();
+            }
+        });
+        try {
+            CountDownLatch done = new CountDownLatch(1);
+            for (int i = 0; i < 2; i++) {
+                schedule(PriorityScheduler.Priority.VISIBLE, new Runnable() {
+                    @Override
+                    public void run() {
+                        throw new AssertionError("fatal");
+                    }
+                });
+            }
+            schedule(PriorityScheduler.Priority.VISIBLE, new Record("after", done));
+            //the error is not swallowed. and the queued job still runs.
+            assertTrue(died.await(TIMEOUT, TimeUnit.SECONDS));
+            assertTrue(done.await(TIMEOUT, TimeUnit.SECONDS));
+            assertEquals(2, uncaught.size());
+            assertTrue(uncaught.get(0) instanceof AssertionError);
+        } finally {
+            Thread.setDefaultUncaughtExceptionHandler(old);
+        }
+    }
+
+    @Test
+    public void testDisposeQueuedJob() throws Exception{
+        CountDownLatch gate1 = new CountDownLatch(1);
+        CountDownLatch gate2 = new CountDownLatch(1);
+        CountDownLatch started = new CountDownLatch(2);
+        CountDownLatch done = new CountDownLatch(1);
+        schedule(PriorityScheduler.Priority.VISIBLE, new Block(started, gate1));
+        schedule(PriorityScheduler.Priority.VISIBLE, new Block(started, gate2));
+        assertTrue(started.await(TIMEOUT, TimeUnit.SECONDS));
+
+        Disposable d = schedule(PriorityScheduler.Priority.VISIBLE, new Record("disposed", null));
+        schedule(PriorityScheduler.Priority.VISIBLE, new Record("kept", done));
+        d.dispose();
+        gate1.countDown();
+        gate2.countDown();
+
+        assertTrue(done.await(TIMEOUT, TimeUnit.SECONDS));
+        assertEquals("[kept]", mOrder.toString());
+    }
+
+    @Test
+    public void testScheduleDelay() throws Exception{
+        CountDownLatch done = new CountDownLatch(1);
+        long start = System.nanoTime();
+        mScheduler.newWorker(PriorityScheduler.Priority.BACKGROUND)
+                .scheduleDelay(new Record("delayed", done), 50, TimeUnit.MILLISECONDS);
+
+        assertTrue(done.await(TIMEOUT, TimeUnit.SECONDS));
+        assertTrue(System.nanoTime() - start >= TimeUnit.MILLISECONDS.toNanos(50));
+    }
+
+    private Disposable schedule(PriorityScheduler.Priority priority, Runnable task){
+        return mScheduler.newWorker(priority).schedule(task);
+    }
+
+    private static class Block implements Runnable{
+        final CountDownLatch started;
+        final CountDownLatch gate;
+
+        Block(CountDownLatch started, CountDownLatch gate) {
+            this.started = started;
+            this.gate = gate;
+        }
+        @Override
+        public void run() {
+            started.countDown();
+            try {
+                gate.await(TIMEOUT, TimeUnit.SECONDS);
+            } catch (InterruptedException e) {
+                Thread.currentThread().interrupt();
+            }
+        }
+    }
+
+    private class Record implements Runnable{
+        final String name;
+        final CountDownLatch done;
+
+        Record(String name, CountDownLatch done) {
+            this.name = name;
+            this.done = done;
+        }
+        @Override
+        public void run() {
+            mOrder.add(name);
+            if(done != null){
+                done.countDown();
+            }
+        }
+    }
+}
@@ -0,0 +1,98 @@
+package com.heaven7.android.ldext.util;
+
+import org.junit.Test;
+
+import java.util.ArrayList;
+import java.util.List;
+
+import static org.junit.Assert.assertEquals;
+import static org.junit.Assert.assertNull;
+
+public class WeightedLruCacheTest {
+
+    @Test
+    public void testEvictByCountInLruOrder(){
+        RecordingCache<String, String> cache = new RecordingCache<>(2, 100, null);
+        cache.put("a", "1");
+        cache.put("b", "2");
+        //touch a. so b is the eldest.
+        cache.get("a");
+        cache.put("c", "3");
+
+        assertEquals(2, cache.size());
+        assertNull(cache.get("b"));
+        assertEquals("1", cache.get("a"));
+        assertEquals("3", cache.get("c"));
+        assertEquals(1, cache.removed.size());
+        assertEquals("b=2", cache.removed.get(0));
+    }
+
+    @Test
+    public void testEvictByWeight(){
+        WeightedLruCache.Weigher<String, String> weigher = new WeightedLruCache.Weigher<String, String>() {
+            @Override
+            public int weigh(String key, String value) {
+                return value.length();
+            }
+        };
+        RecordingCache<String, String> cache = new RecordingCache<>(10, 10, weigher);
+        cache.put("a", "12345");
+        cache.put("b", "1234");
+        assertEquals(9, cache.weight());
+
+        cache.put("c", "123");
+        assertEquals(7, cache.weight());
+        assertEquals(2, cache.size());
+        assertEquals("a=12345", cache.removed.get(0));
+    }
+
+    @Test
+    public void testReplaceAndRemoveDispatchOldValue(){
+        RecordingCache<String, String> cache = new RecordingCache<>(10, 10, null);
+        assertNull(cache.put("a", "1"));
+        assertEquals("1", cache.put("a", "2"));
+        assertEquals(1, cache.weight());
+        assertEquals("2", cache.remove("a"));
+        assertNull(cache.remove("a"));
+        assertEquals(0, cache.weight());
+
+        List<String> expect = new ArrayList<>();
+        expect.add("a=1");
+        expect.add("a=2");
+        assertEquals(expect, cache.removed);
+    }
+
+    @Test
+    public void testClearDispatchAll(){
+        RecordingCache<String, String> cache = new RecordingCache<>(10, 10, null);
+        cache.put("a", "1");
+        cache.put("b", "2");
+        cache.clear();
+
+        assertEquals(0, cache.size());
+        assertEquals(0, cache.weight());
+        assertEquals(2, cache.removed.size());
+    }
+
+    @Test(expected = IllegalStateException.class)
+    public void testNegativeWeight(){
+        new WeightedLruCache<String, String>(10, 10, new WeightedLruCache.Weigher<String, String>() {
+            @Override
+            public int weigh(String key, String value) {
+                return -1;
+            }
+        }).put("a", "1");
+    }
+
+    private static class RecordingCache<K, V> extends WeightedLruCache<K, V>{
+        final List<String> removed = new ArrayList<>();
+
+        RecordingCache(int maxCount, long maxWeight, Weigher<? super K, ? super V> weigher) {
+            super(maxCount, maxWeight, weigher);
+        }
+        @Override
+        protected void onEntryRemoved(K key, V value) {
+            removed.add(key + "=" + value);
+        }
+    }
+}